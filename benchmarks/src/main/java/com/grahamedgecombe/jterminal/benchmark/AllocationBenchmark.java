@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grahamedgecombe.jterminal.TerminalCell;
+import com.grahamedgecombe.jterminal.TerminalSnapshot;
+import com.grahamedgecombe.jterminal.vt100.CellStorage;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Measures how much memory is allocated while printing a {@link Workload} and
+ * taking a snapshot of the screen, as the renderer does for every frame. It is
+ * meant to be run with JMH's GC profiler, for example
+ * {@code java -jar target/benchmarks.jar AllocationBenchmark -prof gc}, which
+ * reports the bytes allocated per operation as {@code gc.alloc.rate.norm}.
+ * @author Graham Edgecombe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+	/**
+	 * The approximate number of characters printed by each operation.
+	 */
+	private static final int LENGTH = 4096;
+
+	/**
+	 * The number of columns.
+	 */
+	private static final int COLUMNS = 80;
+
+	/**
+	 * The number of rows.
+	 */
+	private static final int ROWS = 25;
+
+	/**
+	 * The workload.
+	 */
+	@Param({ "ASCII", "SGR", "ATTRIBUTES" })
+	private Workload workload;
+
+	/**
+	 * The type of cell storage.
+	 */
+	@Param({ "OBJECT", "PACKED" })
+	private CellStorage storage;
+
+	/**
+	 * The model.
+	 */
+	private Vt100TerminalModel model;
+
+	/**
+	 * The snapshot, which is reused like the renderer's.
+	 */
+	private TerminalSnapshot snapshot;
+
+	/**
+	 * The text to print.
+	 */
+	private String text;
+
+	/**
+	 * Creates the model and generates the text.
+	 */
+	@Setup
+	public void setUp() {
+		model = new Vt100TerminalModel(COLUMNS, ROWS, ROWS, storage);
+		snapshot = new TerminalSnapshot();
+		text = workload.generate(LENGTH, COLUMNS, ROWS);
+	}
+
+	/**
+	 * Prints the text.
+	 * @return The model.
+	 */
+	@Benchmark
+	public Vt100TerminalModel print() {
+		model.print(text);
+		return model;
+	}
+
+	/**
+	 * Prints the text and then takes a snapshot of the whole screen.
+	 * @return The last cell in the snapshot.
+	 */
+	@Benchmark
+	public TerminalCell printAndSnapshot() {
+		model.print(text);
+		model.snapshot(0, ROWS, snapshot);
+		return snapshot.getCell(COLUMNS - 1, ROWS - 1);
+	}
+
+}
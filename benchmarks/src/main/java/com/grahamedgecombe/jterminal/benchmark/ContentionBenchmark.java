@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grahamedgecombe.jterminal.TerminalRegion;
+import com.grahamedgecombe.jterminal.TerminalSnapshot;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Measures how long the painter waits for the model while another thread
+ * prints bulk output to it. The {@code bulk} group runs a printer and a
+ * painter against the same model, and {@code idle} runs the painter on its
+ * own, so the difference between their percentiles is the time spent waiting
+ * for the lock.
+ * @author Graham Edgecombe
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+
+	/**
+	 * The approximate number of characters printed by each call, which is
+	 * many times the number the model parses while holding its lock.
+	 */
+	private static final int LENGTH = 65536;
+
+	/**
+	 * The number of columns.
+	 */
+	private static final int COLUMNS = 80;
+
+	/**
+	 * The number of rows.
+	 */
+	private static final int ROWS = 25;
+
+	/**
+	 * The workload.
+	 */
+	@Param({ "ASCII", "SGR" })
+	private Workload workload;
+
+	/**
+	 * The model.
+	 */
+	private Vt100TerminalModel model;
+
+	/**
+	 * The snapshot, which is reused like the renderer's.
+	 */
+	private TerminalSnapshot snapshot;
+
+	/**
+	 * The text to print.
+	 */
+	private String text;
+
+	/**
+	 * Creates the model and generates the text.
+	 */
+	@Setup
+	public void setUp() {
+		model = new Vt100TerminalModel(COLUMNS, ROWS, ROWS);
+		snapshot = new TerminalSnapshot();
+		text = workload.generate(LENGTH, COLUMNS, ROWS);
+	}
+
+	/**
+	 * Prints the text, as the thread reading a process's output does.
+	 * @return The model.
+	 */
+	@Benchmark
+	@Group("bulk")
+	@GroupThreads(1)
+	public Vt100TerminalModel print() {
+		model.print(text);
+		return model;
+	}
+
+	/**
+	 * Collects the damage and a snapshot of the screen while the text is
+	 * printed, as the renderer does for every frame.
+	 * @return The damaged regions.
+	 */
+	@Benchmark
+	@Group("bulk")
+	@GroupThreads(1)
+	public List<TerminalRegion> paint() {
+		return model.collectDamage(0, ROWS, snapshot);
+	}
+
+	/**
+	 * Collects the damage and a snapshot of the screen while nothing is
+	 * printed.
+	 * @return The damaged regions.
+	 */
+	@Benchmark
+	@Group("idle")
+	@GroupThreads(1)
+	public List<TerminalRegion> paintIdle() {
+		return model.collectDamage(0, ROWS, snapshot);
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grahamedgecombe.jterminal.metrics.TerminalMetrics;
+import com.grahamedgecombe.jterminal.vt100.CellStorage;
+import com.grahamedgecombe.jterminal.vt100.SequenceTrace;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Measures how quickly a {@link Vt100TerminalModel} prints each
+ * {@link Workload}. Each operation prints {@link #LENGTH} or slightly more
+ * characters.
+ * @author Graham Edgecombe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+	/**
+	 * The approximate number of characters printed by each operation.
+	 */
+	public static final int LENGTH = 65536;
+
+	/**
+	 * The number of columns.
+	 */
+	private static final int COLUMNS = 80;
+
+	/**
+	 * The number of rows.
+	 */
+	private static final int ROWS = 25;
+
+	/**
+	 * The workload.
+	 */
+	@Param({ "ASCII", "SGR", "TRUECOLOR", "ATTRIBUTES", "REDRAW", "SCROLL", "PAGER", "STATUS" })
+	private Workload workload;
+
+	/**
+	 * The type of cell storage.
+	 */
+	@Param({ "OBJECT", "PACKED" })
+	private CellStorage storage;
+
+	/**
+	 * The buffer size.
+	 */
+	@Param({ "25", "10000" })
+	private int bufferSize;
+
+	/**
+	 * The instrumentation which is enabled: {@code NONE}, {@code METRICS} for
+	 * a {@link TerminalMetrics} sink or {@code TRACE} for a
+	 * {@link SequenceTrace}.
+	 */
+	@Param({ "NONE", "METRICS", "TRACE" })
+	private String instrumentation;
+
+	/**
+	 * The model.
+	 */
+	private Vt100TerminalModel model;
+
+	/**
+	 * The text to print.
+	 */
+	private String text;
+
+	/**
+	 * The text to print, encoded with UTF-8.
+	 */
+	private byte[] bytes;
+
+	/**
+	 * Creates the model and generates the text.
+	 */
+	@Setup
+	public void setUp() {
+		model = new Vt100TerminalModel(COLUMNS, ROWS, bufferSize, storage);
+		if (instrumentation.equals("METRICS")) {
+			model.setMetricsSink(new TerminalMetrics());
+		} else if (instrumentation.equals("TRACE")) {
+			model.setTrace(new SequenceTrace());
+		}
+		text = workload.generate(LENGTH, COLUMNS, ROWS);
+		bytes = text.getBytes(Charset.forName("UTF-8"));
+
+		/* fill the buffer so that every operation scrolls */
+		for (int i = 0; i < bufferSize; i++) {
+			model.print("\r\n");
+		}
+	}
+
+	/**
+	 * Prints the text as a string.
+	 * @return The model.
+	 */
+	@Benchmark
+	public Vt100TerminalModel printString() {
+		model.print(text);
+		return model;
+	}
+
+	/**
+	 * Prints the text as UTF-8 encoded bytes.
+	 * @return The model.
+	 */
+	@Benchmark
+	public Vt100TerminalModel printBytes() {
+		model.print(bytes, 0, bytes.length);
+		return model;
+	}
+
+}
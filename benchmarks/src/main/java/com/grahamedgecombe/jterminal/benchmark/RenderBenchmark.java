@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grahamedgecombe.jterminal.JTerminal;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Measures how quickly a {@link JTerminal} paints a full screen of each
+ * {@link Workload} into an offscreen {@link BufferedImage}. The benchmark
+ * runs in headless mode, so no display is required.
+ * @author Graham Edgecombe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	/**
+	 * The workload.
+	 */
+	@Param({ "ASCII", "SGR", "TRUECOLOR", "ATTRIBUTES", "REDRAW" })
+	private Workload workload;
+
+	/**
+	 * A flag indicating if the glyph cache is enabled.
+	 */
+	@Param({ "true", "false" })
+	private boolean glyphCache;
+
+	/**
+	 * The terminal.
+	 */
+	private JTerminal terminal;
+
+	/**
+	 * The image which the terminal is painted into.
+	 */
+	private BufferedImage image;
+
+	/**
+	 * The graphics context of the image.
+	 */
+	private Graphics2D graphics;
+
+	/**
+	 * Creates the terminal, fills its screen and creates the image.
+	 */
+	@Setup
+	public void setUp() {
+		Vt100TerminalModel model = new Vt100TerminalModel(80, 25, 25);
+		model.print(workload.generate(16384, 80, 25));
+
+		terminal = new JTerminal(model);
+		terminal.setGlyphCacheEnabled(glyphCache);
+		terminal.setSize(terminal.getPreferredSize());
+		terminal.doLayout();
+
+		image = new BufferedImage(terminal.getWidth(), terminal.getHeight(), BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	/**
+	 * Disposes of the graphics context.
+	 */
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	/**
+	 * Paints the whole terminal, drawing every cell again rather than reusing
+	 * the terminal's frame.
+	 * @return The image.
+	 */
+	@Benchmark
+	public BufferedImage paint() {
+		terminal.repaint();
+		terminal.paint(graphics);
+		return image;
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grahamedgecombe.jterminal.JTerminal;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Measures how quickly a {@link JTerminal} prints and paints one line of the
+ * {@link Workload#STATUS} workload, which scrolls the rows between the
+ * margins. In {@code BLIT} mode the terminal paints only what the model
+ * reports as changed, so the scrolled rows are moved within its frame. In
+ * {@code REPAINT} mode the whole screen is drawn again for every line, as it
+ * would be if the program had redrawn the screen itself. The benchmark runs
+ * in headless mode, so no display is required.
+ * @author Graham Edgecombe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScrollBenchmark {
+
+	/**
+	 * The number of lines printed and painted by each invocation. Several
+	 * lines are handled at once to hide the cost of switching to the event
+	 * dispatch thread.
+	 */
+	private static final int LINES = 64;
+
+	/**
+	 * The number of columns.
+	 */
+	private static final int COLUMNS = 80;
+
+	/**
+	 * The number of rows.
+	 */
+	private static final int ROWS = 25;
+
+	/**
+	 * The way the terminal is painted: {@code BLIT} or {@code REPAINT}.
+	 */
+	@Param({ "BLIT", "REPAINT" })
+	private String mode;
+
+	/**
+	 * The terminal.
+	 */
+	private JTerminal terminal;
+
+	/**
+	 * The lines to print, each of which scrolls the region once.
+	 */
+	private String[] lines;
+
+	/**
+	 * The index of the next line to print.
+	 */
+	private int next;
+
+	/**
+	 * The image which the terminal is painted into.
+	 */
+	private BufferedImage image;
+
+	/**
+	 * The graphics context of the image.
+	 */
+	private Graphics2D graphics;
+
+	/**
+	 * The task which prints and paints {@link #LINES} lines.
+	 */
+	private final Runnable task = new Runnable() {
+		@Override
+		public void run() {
+			boolean repaint = mode.equals("REPAINT");
+			for (int i = 0; i < LINES; i++) {
+				terminal.print(lines[next]);
+				next = (next + 1) % lines.length;
+				terminal.flush();
+				if (repaint) {
+					terminal.repaint();
+				}
+				terminal.paint(graphics);
+			}
+		}
+	};
+
+	/**
+	 * Creates the terminal, sets the margins and generates the lines.
+	 */
+	@Setup
+	public void setUp() {
+		String text = Workload.STATUS.generate(65536, COLUMNS, ROWS);
+		int first = text.indexOf('r') + 1;
+		lines = text.substring(first).split("(?=\u001B\\[" + (ROWS - 1) + ";1H)");
+
+		Vt100TerminalModel model = new Vt100TerminalModel(COLUMNS, ROWS, ROWS);
+		terminal = new JTerminal(model);
+		terminal.setFrameRate(0);
+		terminal.setSize(terminal.getPreferredSize());
+		terminal.doLayout();
+		terminal.print(text.substring(0, first));
+
+		image = new BufferedImage(terminal.getWidth(), terminal.getHeight(), BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	/**
+	 * Disposes of the graphics context.
+	 */
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	/**
+	 * Prints and paints {@link #LINES} lines.
+	 * @return The image.
+	 * @throws InterruptedException if the thread is interrupted.
+	 * @throws InvocationTargetException if printing or painting fails.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public BufferedImage printAndPaint() throws InterruptedException, InvocationTargetException {
+		SwingUtilities.invokeAndWait(task);
+		return image;
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.benchmark;
+
+import java.util.Random;
+
+/**
+ * The kinds of output which the benchmarks print. Each workload generates
+ * the same text every time, so that results can be compared between runs.
+ * @author Graham Edgecombe
+ */
+public enum Workload {
+
+	/**
+	 * Plain ASCII log lines.
+	 */
+	ASCII {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			buf.append("2011-05-01 12:");
+			appendNumber(buf, random.nextInt(60), 2);
+			buf.append(':');
+			appendNumber(buf, random.nextInt(60), 2);
+			buf.append(" INFO [worker-").append(random.nextInt(16));
+			buf.append("] request ").append(random.nextInt(1000000));
+			buf.append(" completed in ").append(random.nextInt(1000)).append(" ms\r\n");
+		}
+	},
+
+	/**
+	 * Lines in which most words have their own colors, like the output of
+	 * {@code ls --color} or a compiler.
+	 */
+	SGR {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			int words = 4 + random.nextInt(8);
+			for (int i = 0; i < words; i++) {
+				buf.append("\u001B[");
+				if (random.nextInt(4) == 0) {
+					buf.append("2;");
+				}
+				buf.append(30 + random.nextInt(8));
+				if (random.nextInt(4) == 0) {
+					buf.append(';').append(40 + random.nextInt(8));
+				}
+				buf.append('m');
+				int length = 1 + random.nextInt(8);
+				for (int j = 0; j < length; j++) {
+					buf.append((char) ('a' + random.nextInt(26)));
+				}
+				buf.append("\u001B[0m ");
+			}
+			buf.append("\r\n");
+		}
+	},
+
+	/**
+	 * Lines in which most words have their own 24-bit colors, like the output
+	 * of a syntax highlighter.
+	 */
+	TRUECOLOR {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			int words = 4 + random.nextInt(8);
+			for (int i = 0; i < words; i++) {
+				buf.append("\u001B[38;2;").append(random.nextInt(256));
+				buf.append(';').append(random.nextInt(256));
+				buf.append(';').append(random.nextInt(256)).append('m');
+				int length = 1 + random.nextInt(8);
+				for (int j = 0; j < length; j++) {
+					buf.append((char) ('a' + random.nextInt(26)));
+				}
+				buf.append("\u001B[0m ");
+			}
+			buf.append("\r\n");
+		}
+	},
+
+	/**
+	 * Lines which mix colors with bold, underlined, italic and inverse text,
+	 * like the output of {@code git log --color} or compiler diagnostics.
+	 */
+	ATTRIBUTES {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			switch (random.nextInt(4)) {
+			case 0:
+				buf.append("\u001B[33mcommit ").append(Long.toHexString(random.nextLong()));
+				buf.append("\u001B[m \u001B[1;36m(HEAD -> \u001B[1;32mmaster\u001B[m\u001B[33m)\u001B[m\r\n");
+				break;
+			case 1:
+				buf.append("\u001B[1mFoo.java:").append(random.nextInt(1000)).append(": \u001B[1;31merror:\u001B[0m ");
+				buf.append("\u001B[1mcannot find symbol\u001B[0m \u001B[4mbar").append(random.nextInt(100)).append("\u001B[24m\r\n");
+				break;
+			case 2:
+				buf.append("    \u001B[3msee also\u001B[23m \u001B[7m NOTE \u001B[27m line ").append(random.nextInt(1000));
+				buf.append(" \u001B[9mdeprecated\u001B[29m\r\n");
+				break;
+			default:
+				buf.append("\u001B[32m+    int value = ").append(random.nextInt(100000)).append(";\u001B[m\r\n");
+				break;
+			}
+		}
+	},
+
+	/**
+	 * Full screen redraws with cursor addressing, like the output of
+	 * {@code top}.
+	 */
+	REDRAW {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			buf.append("\u001B[H");
+			for (int row = 1; row <= rows; row++) {
+				buf.append("\u001B[").append(row).append(";1H");
+				if (row == 1 || row == 7) {
+					buf.append("\u001B[30;47m");
+				}
+				int length = 0;
+				while (length < columns - 8) {
+					int value = random.nextInt(100000);
+					String str = Integer.toString(value);
+					buf.append(str).append(' ');
+					length += str.length() + 1;
+				}
+				if (row == 1 || row == 7) {
+					buf.append("\u001B[0m");
+				}
+				buf.append("\u001B[K");
+			}
+		}
+	},
+
+	/**
+	 * Many short lines, which makes the model scroll after nearly every few
+	 * characters.
+	 */
+	SCROLL {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			buf.append(random.nextInt(1000)).append("\r\n");
+		}
+	},
+
+	/**
+	 * A pager scrolling forward one line at a time, like {@code less}: the
+	 * top line is deleted, the new line is written above the status line and
+	 * the status line is redrawn.
+	 */
+	PAGER {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			buf.append("\u001B[1;1H\u001B[M\u001B[").append(rows - 1).append(";1H");
+			int length = random.nextInt(columns);
+			for (int i = 0; i < length; i++) {
+				buf.append((char) ('a' + random.nextInt(26)));
+			}
+			buf.append("\u001B[K\u001B[").append(rows).append(";1H\u001B[7m:\u001B[m\u001B[K");
+		}
+	},
+
+	/**
+	 * Log lines scrolling between margins which leave a title line at the top
+	 * and a status line at the bottom, which is redrawn after every line.
+	 */
+	STATUS {
+		@Override
+		void append(StringBuilder buf, Random random, int columns, int rows) {
+			if (buf.length() == 0) {
+				buf.append("\u001B[7m title \u001B[m\u001B[2;").append(rows - 1).append('r');
+			}
+			buf.append("\u001B[").append(rows - 1).append(";1H");
+			ASCII.append(buf, random, columns, rows);
+			buf.append("\u001B[").append(rows).append(";1H\u001B[7m ").append(random.nextInt(100)).append("% \u001B[m\u001B[K");
+		}
+	};
+
+	/**
+	 * The seed used to generate the text.
+	 */
+	private static final long SEED = 0x6A7465726DL;
+
+	/**
+	 * Generates text for this workload.
+	 * @param minimumLength The minimum number of characters.
+	 * @param columns The number of columns in the terminal.
+	 * @param rows The number of rows in the terminal.
+	 * @return The text, which ends at a line or frame boundary.
+	 */
+	public String generate(int minimumLength, int columns, int rows) {
+		Random random = new Random(SEED);
+		StringBuilder buf = new StringBuilder(minimumLength + 4096);
+		while (buf.length() < minimumLength) {
+			append(buf, random, columns, rows);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Appends a single line or frame of text.
+	 * @param buf The buffer to append the text to.
+	 * @param random The random number generator.
+	 * @param columns The number of columns in the terminal.
+	 * @param rows The number of rows in the terminal.
+	 */
+	abstract void append(StringBuilder buf, Random random, int columns, int rows);
+
+	/**
+	 * Appends a number padded with leading zeroes.
+	 * @param buf The buffer.
+	 * @param value The number.
+	 * @param digits The minimum number of digits.
+	 */
+	private static void appendNumber(StringBuilder buf, int value, int digits) {
+		String str = Integer.toString(value);
+		for (int i = str.length(); i < digits; i++) {
+			buf.append('0');
+		}
+		buf.append(str);
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.grahamedgecombe.jterminal.benchmark.Workload;
+
+/**
+ * Measures how quickly an {@link AnsiControlSequenceParser} parses each
+ * {@link Workload}, without a model behind it. This class is in the same
+ * package as the parser because the parser is not public.
+ * @author Graham Edgecombe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark implements AnsiControlSequenceListener {
+
+	/**
+	 * The approximate number of characters parsed by each operation.
+	 */
+	public static final int LENGTH = 65536;
+
+	/**
+	 * The workload.
+	 */
+	@Param({ "ASCII", "SGR", "TRUECOLOR", "ATTRIBUTES", "REDRAW" })
+	private Workload workload;
+
+	/**
+	 * The parser.
+	 */
+	private AnsiControlSequenceParser parser;
+
+	/**
+	 * The text to parse.
+	 */
+	private char[] text;
+
+	/**
+	 * A value derived from every event, which stops the JIT compiler from
+	 * removing the work done by the parser.
+	 */
+	private int hash;
+
+	/**
+	 * Creates the parser and generates the text.
+	 */
+	@Setup
+	public void setUp() {
+		parser = new AnsiControlSequenceParser(this);
+		text = workload.generate(LENGTH, 80, 25).toCharArray();
+	}
+
+	/**
+	 * Parses the text.
+	 * @return A value derived from every event.
+	 */
+	@Benchmark
+	public int parse() {
+		parser.parse(text, 0, text.length);
+		return hash;
+	}
+
+	@Override
+	public void parsedControlSequence(AnsiControlSequence seq) {
+		hash = hash * 31 + seq.getCommand() + seq.getParameter(0, 0);
+	}
+
+	@Override
+	public void parsedText(char[] text, int offset, int length) {
+		hash = hash * 31 + length;
+	}
+
+	@Override
+	public void parsedControlCharacter(char character) {
+		hash = hash * 31 + character;
+	}
+
+}
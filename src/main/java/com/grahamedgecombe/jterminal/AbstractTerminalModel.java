@@ -22,6 +22,9 @@
 
 package com.grahamedgecombe.jterminal;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * A {@link TerminalModel} which implements some common behaviour.
  * @author Graham Edgecombe
@@ -30,14 +33,152 @@ public abstract class AbstractTerminalModel implements TerminalModel {
 
 	@Override
 	public void clear() {
-		int rows = getRows(), columns = getColumns();
+		clearRegion(0, 0, getColumns(), getRows());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation calls {@link #getCell(int, int)} for each column.
+	 */
+	@Override
+	public TerminalCell[] getRow(int row, TerminalCell[] destination) {
+		if (row < 0 || row >= getBufferSize()) {
+			throw new IndexOutOfBoundsException();
+		}
+		int columns = getColumns();
+		if (destination == null || destination.length < columns) {
+			destination = new TerminalCell[columns];
+		}
 		for (int column = 0; column < columns; column++) {
-			for (int row = 0; row < rows; row++) {
-				setCell(column, row, null);
+			destination[column] = getCell(column, row);
+		}
+		return destination;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation calls {@link #setCell(int, int, TerminalCell)} for
+	 * each cell.
+	 */
+	@Override
+	public void fillRegion(int column, int row, int width, int height, TerminalCell cell) {
+		checkRegion(column, row, width, height);
+		for (int y = row; y < row + height; y++) {
+			for (int x = column; x < column + width; x++) {
+				setCell(x, y, cell);
+			}
+		}
+	}
+
+	@Override
+	public void clearRegion(int column, int row, int width, int height) {
+		fillRegion(column, row, width, height, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation returns {@code false}, for models which do not
+	 * support scroll margins.
+	 */
+	@Override
+	public boolean hasScrollMargins() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation copies one row at a time with
+	 * {@link #getRow(int, TerminalCell[])} and
+	 * {@link #setCell(int, int, TerminalCell)}.
+	 */
+	@Override
+	public void copyRegion(int column, int row, int width, int height, int destinationColumn, int destinationRow) {
+		checkRegion(column, row, width, height);
+		checkRegion(destinationColumn, destinationRow, width, height);
+
+		TerminalCell[] cells = null;
+		for (int i = 0; i < height; i++) {
+			/* copy the rows in the opposite direction to the move */
+			int y = destinationRow > row ? height - 1 - i : i;
+			cells = getRow(row + y, cells);
+			for (int x = 0; x < width; x++) {
+				setCell(destinationColumn + x, destinationRow + y, cells[column + x]);
 			}
 		}
 	}
 
+	@Override
+	public void scrollRegion(int column, int row, int width, int height, int n) {
+		checkRegion(column, row, width, height);
+		int distance = Math.abs(n);
+		if (distance >= height) {
+			clearRegion(column, row, width, height);
+		} else if (n > 0) {
+			copyRegion(column, row + n, width, height - n, column, row);
+			clearRegion(column, row + height - n, width, n);
+		} else if (n < 0) {
+			copyRegion(column, row, width, height - distance, column, row + distance);
+			clearRegion(column, row, width, distance);
+		}
+	}
+
+	/**
+	 * Checks that a rectangular region is within the buffer.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @throws IndexOutOfBoundsException if any part of the region is out of
+	 * bounds or its width or height is negative.
+	 */
+	protected final void checkRegion(int column, int row, int width, int height) {
+		if (column < 0 || row < 0 || width < 0 || height < 0
+				|| column > getColumns() - width || row > getBufferSize() - height) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation does not track changes, so it always reports that
+	 * the whole buffer is damaged. Subclasses should override it if they are
+	 * able to be more precise.
+	 */
+	@Override
+	public List<TerminalRegion> collectDamage() {
+		return Collections.singletonList(new TerminalRegion(0, 0, getColumns(), getBufferSize()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation collects the damage and then takes the snapshot, so
+	 * it is only atomic if the model is not changed concurrently.
+	 */
+	@Override
+	public List<TerminalRegion> collectDamage(int firstRow, int rows, TerminalSnapshot snapshot) {
+		List<TerminalRegion> damage = collectDamage();
+		snapshot(firstRow, rows, snapshot);
+		return damage;
+	}
+
+	@Override
+	public void snapshot(int firstRow, int rows, TerminalSnapshot snapshot) {
+		if (firstRow < 0 || rows < 0 || firstRow + rows > getBufferSize()) {
+			throw new IndexOutOfBoundsException();
+		}
+		int columns = getColumns();
+		snapshot.reset(firstRow, rows, columns, getCursorColumn(), getCursorRow());
+		for (int row = firstRow; row < firstRow + rows; row++) {
+			getRow(row, snapshot.getRow(row));
+		}
+	}
+
 	@Override
 	public void moveCursorBack(int n) {
 		if (n < 0) {
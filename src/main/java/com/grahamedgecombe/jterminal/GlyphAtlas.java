@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A cache of pre-rendered glyphs which are stored in a single image, so that
+ * drawing a character is a simple blit from the image. Each glyph is rendered
+ * for a particular foreground color. The least recently used glyph is evicted
+ * when the atlas is full.
+ * @author Graham Edgecombe
+ */
+final class GlyphAtlas {
+
+	/**
+	 * The number of glyphs in each row of the atlas image.
+	 */
+	private static final int SLOTS_PER_ROW = 64;
+
+	/**
+	 * A value used to indicate the absence of a slot.
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * The font used to render glyphs.
+	 */
+	private final Font font;
+
+	/**
+	 * The width of a glyph in pixels.
+	 */
+	private final int cellWidth;
+
+	/**
+	 * The height of a cell in pixels.
+	 */
+	private final int cellHeight;
+
+	/**
+	 * The height of a glyph in pixels. This is taller than a cell, as the
+	 * baseline is at the bottom of the cell and descenders extend below it.
+	 */
+	private final int glyphHeight;
+
+	/**
+	 * The atlas image.
+	 */
+	private final BufferedImage image;
+
+	/**
+	 * The key of the glyph in each slot.
+	 */
+	private final long[] keys;
+
+	/**
+	 * The more recently used neighbour of each slot.
+	 */
+	private final int[] previous;
+
+	/**
+	 * The less recently used neighbour of each slot.
+	 */
+	private final int[] next;
+
+	/**
+	 * The next slot in the same hash bucket as each slot.
+	 */
+	private final int[] chain;
+
+	/**
+	 * The first slot in each hash bucket.
+	 */
+	private final int[] buckets;
+
+	/**
+	 * The most recently used slot.
+	 */
+	private int head = NONE;
+
+	/**
+	 * The least recently used slot.
+	 */
+	private int tail = NONE;
+
+	/**
+	 * The number of slots which have been used.
+	 */
+	private int size = 0;
+
+	/**
+	 * The number of times a glyph was found in the atlas.
+	 */
+	private long hits = 0;
+
+	/**
+	 * The number of times a glyph had to be rendered into the atlas.
+	 */
+	private long misses = 0;
+
+	/**
+	 * Creates the glyph atlas.
+	 * @param font The font used to render glyphs.
+	 * @param cellWidth The width of a cell in pixels.
+	 * @param cellHeight The height of a cell in pixels.
+	 * @param capacity The maximum number of glyphs.
+	 * @throws IllegalArgumentException if the capacity is not positive.
+	 */
+	public GlyphAtlas(Font font, int cellWidth, int cellHeight, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.font = font;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+		this.glyphHeight = cellHeight + (int) Math.ceil(font.getLineMetrics("g", new FontRenderContext(null, false, false)).getDescent());
+
+		int columns = Math.min(capacity, SLOTS_PER_ROW);
+		int rows = (capacity + SLOTS_PER_ROW - 1) / SLOTS_PER_ROW;
+		this.image = createImage(columns * cellWidth, rows * glyphHeight);
+
+		this.keys = new long[capacity];
+		this.previous = new int[capacity];
+		this.next = new int[capacity];
+		this.chain = new int[capacity];
+		this.buckets = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		Arrays.fill(buckets, NONE);
+	}
+
+	/**
+	 * Creates an image which is compatible with the screen, if there is one.
+	 * @param width The width.
+	 * @param height The height.
+	 * @return The image.
+	 */
+	private static BufferedImage createImage(int width, int height) {
+		if (!GraphicsEnvironment.isHeadless()) {
+			return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDefaultConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/**
+	 * Draws a glyph, rendering it into the atlas first if it is not already
+	 * there.
+	 * @param g The graphics context.
+	 * @param character The character.
+	 * @param color The foreground color.
+	 * @param x The x coordinate of the cell.
+	 * @param y The y coordinate of the cell.
+	 */
+	public void draw(Graphics g, char character, Color color, int x, int y) {
+		long key = ((long) color.getRGB() << 16) | character;
+		int bucket = hash(key);
+
+		int slot = buckets[bucket];
+		while (slot != NONE && keys[slot] != key) {
+			slot = chain[slot];
+		}
+
+		if (slot == NONE) {
+			misses++;
+			slot = allocate();
+			keys[slot] = key;
+			chain[slot] = buckets[bucket];
+			buckets[bucket] = slot;
+			render(slot, character, color);
+		} else {
+			hits++;
+			unlink(slot);
+		}
+		link(slot);
+
+		int sx = (slot % SLOTS_PER_ROW) * cellWidth;
+		int sy = (slot / SLOTS_PER_ROW) * glyphHeight;
+		g.drawImage(image, x, y, x + cellWidth, y + glyphHeight, sx, sy, sx + cellWidth, sy + glyphHeight, null);
+	}
+
+	/**
+	 * Gets an unused slot, evicting the least recently used glyph if the atlas
+	 * is full. The slot is not in the recently used list or any hash bucket.
+	 * @return The slot.
+	 */
+	private int allocate() {
+		if (size < keys.length) {
+			return size++;
+		}
+
+		int slot = tail;
+		unlink(slot);
+
+		int bucket = hash(keys[slot]);
+		if (buckets[bucket] == slot) {
+			buckets[bucket] = chain[slot];
+		} else {
+			int current = buckets[bucket];
+			while (chain[current] != slot) {
+				current = chain[current];
+			}
+			chain[current] = chain[slot];
+		}
+		return slot;
+	}
+
+	/**
+	 * Renders a glyph into a slot.
+	 * @param slot The slot.
+	 * @param character The character.
+	 * @param color The foreground color.
+	 */
+	private void render(int slot, char character, Color color) {
+		int sx = (slot % SLOTS_PER_ROW) * cellWidth;
+		int sy = (slot / SLOTS_PER_ROW) * glyphHeight;
+
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(sx, sy, cellWidth, glyphHeight);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.clipRect(sx, sy, cellWidth, glyphHeight);
+			g.setFont(font);
+			g.setColor(color);
+			g.drawChars(new char[] { character }, 0, 1, sx, sy + cellHeight);
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Adds a slot to the front of the recently used list.
+	 * @param slot The slot.
+	 */
+	private void link(int slot) {
+		previous[slot] = NONE;
+		next[slot] = head;
+		if (head != NONE) {
+			previous[head] = slot;
+		}
+		head = slot;
+		if (tail == NONE) {
+			tail = slot;
+		}
+	}
+
+	/**
+	 * Removes a slot from the recently used list.
+	 * @param slot The slot.
+	 */
+	private void unlink(int slot) {
+		int before = previous[slot], after = next[slot];
+		if (before == NONE) {
+			head = after;
+		} else {
+			next[before] = after;
+		}
+		if (after == NONE) {
+			tail = before;
+		} else {
+			previous[after] = before;
+		}
+	}
+
+	/**
+	 * Gets the hash bucket for a key.
+	 * @param key The key.
+	 * @return The bucket.
+	 */
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & (buckets.length - 1);
+	}
+
+	/**
+	 * Gets the number of glyphs which were drawn from the atlas.
+	 * @return The number of hits.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of glyphs which had to be rendered into the atlas.
+	 * @return The number of misses.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of glyphs in the atlas.
+	 * @return The number of glyphs.
+	 */
+	public int size() {
+		return size;
+	}
+
+}
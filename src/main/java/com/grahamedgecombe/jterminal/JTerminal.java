@@ -23,15 +23,28 @@
 package com.grahamedgecombe.jterminal;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JComponent;
 import javax.swing.JScrollBar;
+import javax.swing.SwingUtilities;
 
+import com.grahamedgecombe.jterminal.metrics.MetricsSink;
+import com.grahamedgecombe.jterminal.metrics.NopMetricsSink;
 import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
 
 /**
@@ -57,9 +70,80 @@ public class JTerminal extends JComponent {
 		private static final int CELL_HEIGHT = 12;
 
 		/**
-		 * The font.
+		 * The number of slots in the cache of faint colors, which must be a
+		 * power of two.
 		 */
-		private final Font font = new Font("Monospaced", Font.PLAIN, CELL_HEIGHT);
+		private static final int FAINT_CACHE_SIZE = 64;
+
+		/**
+		 * The font, scaled horizontally so that each character is exactly one
+		 * cell wide. This allows a run of characters to be drawn at once.
+		 */
+		private final Font font = createFont();
+
+		/**
+		 * The font in each style, indexed by a combination of
+		 * {@link Font#BOLD} and {@link Font#ITALIC}.
+		 */
+		private final Font[] fonts = {
+			font,
+			font.deriveFont(Font.BOLD),
+			font.deriveFont(Font.ITALIC),
+			font.deriveFont(Font.BOLD | Font.ITALIC)
+		};
+
+		/**
+		 * The buffer used to hold the characters in a run of cells.
+		 */
+		private char[] text = new char[0];
+
+		/**
+		 * The snapshot of the visible rows which the frame is drawn from. It is
+		 * taken along with the damage each time the terminal is painted, so the
+		 * frame is always brought up to date from the state which the damage
+		 * describes.
+		 */
+		private final TerminalSnapshot snapshot = new TerminalSnapshot();
+
+		/**
+		 * The direct-mapped cache of colors which faint text is drawn in, keyed
+		 * by their RGB value.
+		 */
+		private final Color[] faintColors = new Color[FAINT_CACHE_SIZE];
+
+		/**
+		 * The glyph atlas, or {@code null} if glyphs are drawn directly.
+		 */
+		private GlyphAtlas glyphAtlas;
+
+		/**
+		 * The image which holds the visible cells as they were last drawn, so
+		 * that only the cells which have changed need to be drawn again, or
+		 * {@code null} if nothing has been painted yet.
+		 */
+		private BufferedImage frame;
+
+		/**
+		 * The first column in each visible row which needs to be drawn again
+		 * before the frame is shown (inclusive).
+		 */
+		private int[] invalidStarts = new int[0];
+
+		/**
+		 * The last column in each visible row which needs to be drawn again
+		 * before the frame is shown (exclusive).
+		 */
+		private int[] invalidEnds = new int[0];
+
+		/**
+		 * The first visible row when the frame was drawn.
+		 */
+		private int frameStart = -1;
+
+		/**
+		 * The model which the frame was drawn from.
+		 */
+		private TerminalModel frameModel;
 
 		/**
 		 * The unique serial version id.
@@ -73,6 +157,19 @@ public class JTerminal extends JComponent {
 			setDoubleBuffered(true);
 		}
 
+		/**
+		 * Creates the font.
+		 * @return The font.
+		 */
+		private Font createFont() {
+			Font font = new Font("Monospaced", Font.PLAIN, CELL_HEIGHT);
+			double advance = font.getStringBounds("W", new FontRenderContext(null, false, false)).getWidth();
+			if (advance <= 0 || advance == CELL_WIDTH) {
+				return font;
+			}
+			return font.deriveFont(AffineTransform.getScaleInstance(CELL_WIDTH / advance, 1));
+		}
+
 		@Override
 		public Dimension getMinimumSize() {
 			return new Dimension(model.getColumns() * CELL_WIDTH, model.getRows() * CELL_HEIGHT);
@@ -88,38 +185,423 @@ public class JTerminal extends JComponent {
 			return getMinimumSize();
 		}
 
+		/**
+		 * Schedules a paint of the whole terminal, which brings the frame up to
+		 * date with the model. Only the cells which the model reports as damaged
+		 * are drawn again.
+		 */
+		private void update() {
+			super.repaint(0, 0, 0, getWidth(), getHeight());
+		}
+
+		/**
+		 * Gets the part of the terminal which contains the specified region of
+		 * the buffer.
+		 * @param region The region.
+		 * @param start The first visible row.
+		 * @return The part of the terminal in pixels, or {@code null} if none of
+		 * the region is visible.
+		 */
+		private Rectangle getBounds(TerminalRegion region, int start) {
+			int top = Math.max(region.getRow(), start);
+			int bottom = Math.min(region.getRow() + region.getRows(), start + model.getRows());
+			if (top >= bottom) {
+				return null;
+			}
+
+			return new Rectangle(region.getColumn() * CELL_WIDTH, (top - start) * CELL_HEIGHT,
+					region.getColumns() * CELL_WIDTH, (bottom - top) * CELL_HEIGHT);
+		}
+
+		/**
+		 * Moves the pixels of a region whose contents have scrolled, as
+		 * reported by {@link TerminalRegion#getScroll()}, within the frame.
+		 * Only the rows which the scroll exposed then have to be drawn again.
+		 * @param region The region.
+		 * @param start The first visible row.
+		 * @return {@code true} if the pixels were moved, {@code false} if they
+		 * could not be because the region is not entirely visible or does not
+		 * span every column.
+		 */
+		private boolean scroll(TerminalRegion region, int start) {
+			int top = region.getRow() - start, rows = region.getRows(), n = region.getScroll();
+			if (top < 0 || top + rows > invalidStarts.length || region.getColumn() != 0 || region.getColumns() != model.getColumns()) {
+				return false;
+			}
+
+			int width = frame.getWidth(), y = top * CELL_HEIGHT, height = rows * CELL_HEIGHT, dy = n * CELL_HEIGHT;
+			Graphics g = frame.getGraphics();
+			try {
+				if (n > 0) {
+					g.copyArea(0, y + dy, width, height - dy, 0, -dy);
+				} else {
+					g.copyArea(0, y, width, height + dy, 0, -dy);
+				}
+			} finally {
+				g.dispose();
+			}
+
+			/* cells which have not been drawn yet move with the rows */
+			int end = top + rows;
+			if (n > 0) {
+				System.arraycopy(invalidStarts, top + n, invalidStarts, top, rows - n);
+				System.arraycopy(invalidEnds, top + n, invalidEnds, top, rows - n);
+				Arrays.fill(invalidStarts, end - n, end, 0);
+				Arrays.fill(invalidEnds, end - n, end, Integer.MAX_VALUE);
+			} else {
+				System.arraycopy(invalidStarts, top, invalidStarts, top - n, rows + n);
+				System.arraycopy(invalidEnds, top, invalidEnds, top - n, rows + n);
+				Arrays.fill(invalidStarts, top, top - n, 0);
+				Arrays.fill(invalidEnds, top, top - n, Integer.MAX_VALUE);
+			}
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * The cells in the area are drawn again before the frame is shown.
+		 */
+		@Override
+		public void repaint(long tm, int x, int y, int width, int height) {
+			invalidateCells(x, y, width, height);
+			super.repaint(tm, x, y, width, height);
+		}
+
+		/**
+		 * Marks the cells in an area as needing to be drawn again.
+		 * @param x The x coordinate of the area in pixels.
+		 * @param y The y coordinate of the area in pixels.
+		 * @param width The width of the area in pixels.
+		 * @param height The height of the area in pixels.
+		 */
+		private void invalidateCells(int x, int y, int width, int height) {
+			if (invalidStarts == null || width <= 0 || height <= 0) {
+				/* this is called by the JComponent constructor */
+				return;
+			}
+			int firstColumn = Math.max(x / CELL_WIDTH, 0);
+			int lastColumn = (int) Math.min(((long) x + width + CELL_WIDTH - 1) / CELL_WIDTH, Integer.MAX_VALUE);
+			int firstRow = Math.max(y / CELL_HEIGHT, 0);
+			int lastRow = (int) Math.min(((long) y + height + CELL_HEIGHT - 1) / CELL_HEIGHT, invalidStarts.length);
+			for (int row = firstRow; row < lastRow; row++) {
+				invalidStarts[row] = Math.min(invalidStarts[row], firstColumn);
+				invalidEnds[row] = Math.max(invalidEnds[row], lastColumn);
+			}
+		}
+
 		@Override
 		public void paint(Graphics g) {
+			MetricsSink sink = metrics;
+			long start = System.nanoTime();
+			paintCells(g);
+			long end = System.nanoTime();
+
+			sink.painted(end - start);
+			long input = inputTime.getAndSet(0);
+			if (input != 0) {
+				sink.inputPainted(end - input);
+			}
+		}
+
+		/**
+		 * Brings the frame up to date and paints it within the clip bounds.
+		 * @param g The graphics context.
+		 */
+		private void paintCells(Graphics g) {
+			int columns = model.getColumns(), rows = model.getRows();
+			int width = columns * CELL_WIDTH, height = rows * CELL_HEIGHT;
+			int start = getFirstVisibleRow();
+
+			Rectangle clip = g.getClipBounds();
+			if (clip == null) {
+				clip = new Rectangle(0, 0, getWidth(), getHeight());
+			}
+			if (clip.x + clip.width > width || clip.y + clip.height > height) {
+				g.setColor(model.getDefaultBackgroundColor());
+				g.fillRect(clip.x, clip.y, clip.width, clip.height);
+			}
+			if (width == 0 || height == 0) {
+				return;
+			}
+
+			if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+				GraphicsConfiguration config = getGraphicsConfiguration();
+				frame = config == null ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB) : config.createCompatibleImage(width, height);
+				invalidStarts = new int[rows];
+				invalidEnds = new int[rows];
+				frameModel = null;
+			}
+
+			/*
+			 * the damage and the snapshot are taken together, so a change which
+			 * is made while the frame is being drawn is not drawn before its
+			 * damage has been applied
+			 */
+			int visible = Math.max(Math.min(rows, model.getBufferSize() - start), 0);
+			List<TerminalRegion> damage = model.collectDamage(start, visible, snapshot);
+			Rectangle dirty = null;
+			if (start != frameStart || model != frameModel) {
+				Arrays.fill(invalidStarts, 0);
+				Arrays.fill(invalidEnds, Integer.MAX_VALUE);
+				frameStart = start;
+				frameModel = model;
+				dirty = new Rectangle(0, 0, width, height);
+			} else {
+				for (TerminalRegion region : damage) {
+					Rectangle bounds = getBounds(region, start);
+					if (bounds == null) {
+						continue;
+					}
+					if (region.getScroll() == 0 || !scroll(region, start)) {
+						invalidateCells(bounds.x, bounds.y, bounds.width, bounds.height);
+					}
+					if (dirty == null) {
+						dirty = bounds;
+					} else {
+						dirty.add(bounds);
+					}
+				}
+			}
+
+			drawInvalidCells(g);
+			g.drawImage(frame, 0, 0, null);
+
+			/* show any changes which were drawn outside of the clip */
+			if (dirty != null && !clip.contains(dirty)) {
+				super.repaint(0, dirty.x, dirty.y, dirty.width, dirty.height);
+			}
+		}
+
+		/**
+		 * Draws the cells which have changed into the frame. Rows with the same
+		 * range of changed columns are drawn together.
+		 * @param g The graphics context the frame will be painted into, whose
+		 * rendering hints are copied.
+		 */
+		private void drawInvalidCells(Graphics g) {
+			Graphics2D frameGraphics = frame.createGraphics();
+			try {
+				if (g instanceof Graphics2D) {
+					frameGraphics.setRenderingHints(((Graphics2D) g).getRenderingHints());
+				}
+
+				int rows = invalidStarts.length;
+				int row = 0;
+				while (row < rows) {
+					int start = invalidStarts[row], end = invalidEnds[row];
+					if (start >= end) {
+						row++;
+						continue;
+					}
+
+					int first = row;
+					do {
+						row++;
+					} while (row < rows && invalidStarts[row] == start && invalidEnds[row] == end);
+
+					int width = (int) Math.min((long) (end - start) * CELL_WIDTH, frame.getWidth());
+					frameGraphics.setClip(start * CELL_WIDTH, first * CELL_HEIGHT, width, (row - first) * CELL_HEIGHT);
+					drawCells(frameGraphics);
+				}
+
+				Arrays.fill(invalidStarts, Integer.MAX_VALUE);
+				Arrays.fill(invalidEnds, 0);
+			} finally {
+				frameGraphics.dispose();
+			}
+		}
+
+		/**
+		 * Draws the cells and the cursor within the clip bounds.
+		 * @param g The graphics context.
+		 */
+		private void drawCells(Graphics g) {
 			g.setFont(font);
 
 			int width = model.getColumns();
 			int height = model.getBufferSize();
+			int start = getFirstVisibleRow();
+
+			if (text.length < width) {
+				text = new char[width];
+			}
+
+			Rectangle clip = g.getClipBounds();
+			if (clip == null) {
+				clip = new Rectangle(0, 0, width * CELL_WIDTH, model.getRows() * CELL_HEIGHT);
+			}
 
 			g.setColor(model.getDefaultBackgroundColor());
-			g.fillRect(0, 0, width * CELL_WIDTH, height * CELL_HEIGHT);
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+			int firstColumn = Math.max(clip.x / CELL_WIDTH, 0);
+			int lastColumn = Math.min((clip.x + clip.width + CELL_WIDTH - 1) / CELL_WIDTH, width);
+			int firstRow = start + Math.max(clip.y / CELL_HEIGHT, 0);
+			int lastRow = start + (clip.y + clip.height + CELL_HEIGHT - 1) / CELL_HEIGHT;
+			lastRow = Math.min(lastRow, Math.min(start + model.getRows(), height));
+			if (firstRow >= lastRow) {
+				return;
+			}
 
-			int start = scrollBar == null ? 0 : scrollBar.getValue();
-			for (int y = start; y < height; y++) {
-				for (int x = 0; x < width; x++) {
-					TerminalCell cell = model.getCell(x, y);
-					boolean cursorHere = model.getCursorRow() == y && model.getCursorColumn() == x;
+			for (int y = firstRow; y < lastRow; y++) {
+				TerminalCell[] cells = snapshot.getRow(y);
+				int py = (y - start) * CELL_HEIGHT;
+				int x = firstColumn;
+				TerminalCell cell = x < lastColumn ? cells[x] : null;
+				while (x < lastColumn) {
+					if (cell == null) {
+						if (++x < lastColumn) {
+							cell = cells[x];
+						}
+						continue;
+					}
+
+					Color back = cell.getBackgroundColor();
+					Color fore = cell.getForegroundColor();
+					int attributes = cell.getAttributes();
+					int runStart = x, length = 0;
+					do {
+						text[length++] = cell.getCharacter();
+						cell = ++x < lastColumn ? cells[x] : null;
+					} while (cell != null && attributes == cell.getAttributes()
+							&& back.equals(cell.getBackgroundColor()) && fore.equals(cell.getForegroundColor()));
+
+					drawRun(g, runStart * CELL_WIDTH, py, length, back, fore, attributes);
+				}
+			}
 
-					if (cursorHere && cell == null) {
-						cell = new TerminalCell(' ', model.getDefaultBackgroundColor(), model.getDefaultForegroundColor());
+			int cursorColumn = snapshot.getCursorColumn(), cursorRow = snapshot.getCursorRow();
+			if (cursorColumn >= firstColumn && cursorColumn < lastColumn && cursorRow >= firstRow && cursorRow < lastRow) {
+				TerminalCell cell = snapshot.getCell(cursorColumn, cursorRow);
+				if (cell == null) {
+					text[0] = ' ';
+					drawRun(g, cursorColumn * CELL_WIDTH, (cursorRow - start) * CELL_HEIGHT, 1, model.getDefaultBackgroundColor(), model.getDefaultForegroundColor(), TerminalCell.INVERSE);
+				} else {
+					text[0] = cell.getCharacter();
+					drawRun(g, cursorColumn * CELL_WIDTH, (cursorRow - start) * CELL_HEIGHT, 1, cell.getBackgroundColor(), cell.getForegroundColor(), cell.getAttributes() ^ TerminalCell.INVERSE);
+				}
+			}
+		}
+
+		/**
+		 * Draws a run of cells which share the same colors and attributes. The
+		 * characters are taken from the start of the {@link #text} buffer.
+		 * Blinking text is drawn steadily.
+		 * @param g The graphics context.
+		 * @param px The x coordinate of the first cell in pixels.
+		 * @param py The y coordinate of the first cell in pixels.
+		 * @param length The number of cells.
+		 * @param back The background color.
+		 * @param fore The foreground color.
+		 * @param attributes The attribute flags.
+		 */
+		private void drawRun(Graphics g, int px, int py, int length, Color back, Color fore, int attributes) {
+			if ((attributes & TerminalCell.INVERSE) != 0) {
+				Color tmp = back;
+				back = fore;
+				fore = tmp;
+			}
+			g.setColor(back);
+			g.fillRect(px, py, length * CELL_WIDTH, CELL_HEIGHT);
+			if ((attributes & TerminalCell.CONCEAL) != 0) {
+				return;
+			}
+
+			if ((attributes & TerminalCell.FAINT) != 0) {
+				fore = getFaintColor(fore, back);
+			}
+			g.setColor(fore);
+			int baseline = py + CELL_HEIGHT;
+
+			if ((attributes & TerminalCell.UNDERLINE) != 0) {
+				g.drawLine(px, baseline - 1, px + length * CELL_WIDTH - 1, baseline - 1);
+			}
+			if ((attributes & TerminalCell.STRIKETHROUGH) != 0) {
+				int y = py + CELL_HEIGHT / 2;
+				g.drawLine(px, y, px + length * CELL_WIDTH - 1, y);
+			}
+
+			/*
+			 * the font is only changed when the style changes, as consecutive
+			 * runs usually have the same style
+			 */
+			int style = ((attributes & TerminalCell.BOLD) != 0 ? Font.BOLD : 0) | ((attributes & TerminalCell.ITALIC) != 0 ? Font.ITALIC : 0);
+			if (g.getFont() != fonts[style]) {
+				g.setFont(fonts[style]);
+			}
+			if (style != Font.PLAIN) {
+				/* the glyph atlas only contains plain glyphs */
+				drawText(g, px, baseline, length);
+				return;
+			}
+
+			if (glyphAtlas != null) {
+				for (int i = 0; i < length; i++) {
+					char character = text[i];
+					if (character == ' ') {
+						continue;
+					} else if (character < 128) {
+						glyphAtlas.draw(g, character, fore, px + i * CELL_WIDTH, py);
+					} else {
+						g.drawChars(text, i, 1, px + i * CELL_WIDTH, baseline);
 					}
+				}
+				return;
+			}
 
-					if (cell != null) {
-						int px = x * CELL_WIDTH;
-						int py = (y - start) * CELL_HEIGHT;
+			drawText(g, px, baseline, length);
+		}
 
-						g.setColor(cursorHere ? cell.getForegroundColor() : cell.getBackgroundColor());
-						g.fillRect(px, py, CELL_WIDTH, CELL_HEIGHT);
+		/**
+		 * Gets the color which faint text is drawn in, halfway between its
+		 * foreground and background colors. The colors are cached, so a new
+		 * one is only created the first time a pair of colors is used.
+		 * @param fore The foreground color.
+		 * @param back The background color.
+		 * @return The faint color.
+		 */
+		private Color getFaintColor(Color fore, Color back) {
+			/* average each channel, rounding down, without carrying between them */
+			int f = fore.getRGB(), b = back.getRGB();
+			int rgb = (((f & 0xFEFEFE) + (b & 0xFEFEFE)) >>> 1) + (f & b & 0x010101);
+			int hash = rgb * 0x9E3779B1;
+			int index = (hash ^ (hash >>> 16)) & (faintColors.length - 1);
+
+			Color color = faintColors[index];
+			if (color == null || (color.getRGB() & 0xFFFFFF) != rgb) {
+				color = new Color(rgb);
+				faintColors[index] = color;
+			}
+			return color;
+		}
 
-						g.setColor(cursorHere ? cell.getBackgroundColor() : cell.getForegroundColor());
-						g.drawChars(new char[] { cell.getCharacter() }, 0, 1, px, py + CELL_HEIGHT);
+		/**
+		 * Draws the characters at the start of the {@link #text} buffer with
+		 * the current font and color.
+		 * @param g The graphics context.
+		 * @param px The x coordinate of the first cell in pixels.
+		 * @param baseline The y coordinate of the baseline in pixels.
+		 * @param length The number of characters.
+		 */
+		private void drawText(Graphics g, int px, int baseline, int length) {
+			int segmentStart = 0;
+			for (int i = 0; i < length; i++) {
+				/*
+				 * only ASCII characters are guaranteed to be exactly one cell
+				 * wide, so anything else is drawn on its own
+				 */
+				if (text[i] >= 128) {
+					if (i > segmentStart) {
+						g.drawChars(text, segmentStart, i - segmentStart, px + segmentStart * CELL_WIDTH, baseline);
 					}
+					g.drawChars(text, i, 1, px + i * CELL_WIDTH, baseline);
+					segmentStart = i + 1;
 				}
 			}
+			if (length > segmentStart) {
+				g.drawChars(text, segmentStart, length - segmentStart, px + segmentStart * CELL_WIDTH, baseline);
+			}
 		}
 
 	}
@@ -129,16 +611,58 @@ public class JTerminal extends JComponent {
 	 */
 	private static final long serialVersionUID = 2871625194146986567L;
 
+	/**
+	 * The maximum number of glyphs in the glyph cache.
+	 */
+	private static final int GLYPH_CACHE_SIZE = 1024;
+
+	/**
+	 * The default maximum number of frames per second.
+	 */
+	private static final int DEFAULT_FRAME_RATE = 60;
+
 	/**
 	 * The scroll bar.
 	 */
 	private JScrollBar scrollBar;
 
+	/**
+	 * The component that draws the terminal.
+	 */
+	private Terminal terminal;
+
+	/**
+	 * The maximum number of frames per second.
+	 */
+	private int frameRate = DEFAULT_FRAME_RATE;
+
+	/**
+	 * The scheduler which coalesces changes to the model into repaints.
+	 */
+	private final RepaintScheduler scheduler = new RepaintScheduler(frameRate, new Runnable() {
+		@Override
+		public void run() {
+			repaintDamage();
+		}
+	});
+
 	/**
 	 * The current model.
 	 */
 	private TerminalModel model;
 
+	/**
+	 * The current metrics sink.
+	 */
+	private volatile MetricsSink metrics = new NopMetricsSink();
+
+	/**
+	 * The value of {@link System#nanoTime()} when the first change to the
+	 * model since the last paint was reported, or {@code 0} if there has not
+	 * been one.
+	 */
+	private final AtomicLong inputTime = new AtomicLong();
+
 	/**
 	 * Creates a terminal with the a new {@link Vt100TerminalModel}.
 	 */
@@ -175,11 +699,173 @@ public class JTerminal extends JComponent {
 			add(BorderLayout.LINE_END, scrollBar);
 		}
 
-		add(BorderLayout.CENTER, new Terminal());
+		terminal = new Terminal();
+		add(BorderLayout.CENTER, terminal);
 
 		repaint();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The visible cells within the area are drawn again, not only the ones
+	 * which the model reports as damaged.
+	 */
+	@Override
+	public void repaint(long tm, int x, int y, int width, int height) {
+		super.repaint(tm, x, y, width, height);
+		if (terminal != null) {
+			terminal.repaint(tm, x - terminal.getX(), y - terminal.getY(), width, height);
+		}
+	}
+
+	/**
+	 * Gets the first row of the buffer which is visible.
+	 * @return The first visible row.
+	 */
+	private int getFirstVisibleRow() {
+		return scrollBar == null ? 0 : scrollBar.getValue();
+	}
+
+	/**
+	 * Repaints the terminal after the model has changed. The damage is
+	 * collected when the terminal is painted. Regions which have scrolled are
+	 * moved with a blit where possible, so only the rows they exposed need to
+	 * be drawn again.
+	 */
+	private void repaintDamage() {
+		terminal.update();
+	}
+
+	/**
+	 * Gets the maximum number of times per second the terminal is repainted
+	 * after printing.
+	 * @return The frame rate, or {@code 0} if there is no limit.
+	 */
+	public int getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Sets the maximum number of times per second the terminal is repainted
+	 * after printing. Output which arrives faster than this is coalesced into
+	 * a single repaint, skipping any intermediate states. If nothing has been
+	 * repainted for longer than a frame, the next change is repainted straight
+	 * away. The default is 60.
+	 * @param frameRate The frame rate, or {@code 0} for no limit.
+	 * @throws IllegalArgumentException if the frame rate is negative.
+	 */
+	public void setFrameRate(int frameRate) {
+		scheduler.setFrameRate(frameRate);
+		this.frameRate = frameRate;
+	}
+
+	/**
+	 * Repaints any changes to the model immediately, regardless of the frame
+	 * rate. This also picks up changes made to the model directly rather than
+	 * through this component. If this is not called on the event dispatch
+	 * thread, the repaint happens as soon as the event dispatch thread is
+	 * free.
+	 */
+	public void flush() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			scheduler.flush();
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					scheduler.flush();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gets the number of frames in which the terminal has been repainted
+	 * after printing.
+	 * @return The number of frames.
+	 */
+	public long getFrameCount() {
+		return scheduler.getFrames();
+	}
+
+	/**
+	 * Gets the number of calls to {@link #print(String)} and
+	 * {@link #modelChanged()} which were merged into a frame that had already
+	 * been scheduled.
+	 * @return The number of coalesced updates.
+	 */
+	public long getCoalescedUpdateCount() {
+		return scheduler.getCoalescedUpdates();
+	}
+
+	/**
+	 * Checks if glyphs are drawn from a cache of pre-rendered images rather
+	 * than being drawn as text.
+	 * @return {@code true} if the glyph cache is enabled, {@code false} if not.
+	 */
+	public boolean isGlyphCacheEnabled() {
+		return terminal.glyphAtlas != null;
+	}
+
+	/**
+	 * Sets whether glyphs are drawn from a cache of pre-rendered images rather
+	 * than being drawn as text. This is disabled by default. Only ASCII
+	 * characters are cached, other characters are always drawn as text.
+	 * Disabling the cache discards it and its statistics.
+	 * @param enabled {@code true} to enable the glyph cache, {@code false} to
+	 * disable it.
+	 */
+	public void setGlyphCacheEnabled(boolean enabled) {
+		if (enabled == isGlyphCacheEnabled()) {
+			return;
+		}
+		terminal.glyphAtlas = enabled ? new GlyphAtlas(terminal.font, Terminal.CELL_WIDTH, Terminal.CELL_HEIGHT, GLYPH_CACHE_SIZE) : null;
+		terminal.repaint();
+	}
+
+	/**
+	 * Gets the number of glyphs which were drawn from the glyph cache.
+	 * @return The number of cache hits, or {@code 0} if the cache is disabled.
+	 */
+	public long getGlyphCacheHits() {
+		GlyphAtlas atlas = terminal.glyphAtlas;
+		return atlas == null ? 0 : atlas.getHits();
+	}
+
+	/**
+	 * Gets the number of glyphs which had to be rendered into the glyph cache.
+	 * @return The number of cache misses, or {@code 0} if the cache is
+	 * disabled.
+	 */
+	public long getGlyphCacheMisses() {
+		GlyphAtlas atlas = terminal.glyphAtlas;
+		return atlas == null ? 0 : atlas.getMisses();
+	}
+
+	/**
+	 * Gets the current metrics sink.
+	 * @return The current metrics sink.
+	 */
+	public MetricsSink getMetricsSink() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the metrics sink, which is told how long each paint takes and how
+	 * long after a call to {@link #print(String)} or {@link #modelChanged()}
+	 * the change was painted. By default a {@link NopMetricsSink} is used.
+	 * The same sink may also be given to a {@link Vt100TerminalModel}.
+	 * @param sink The new metrics sink.
+	 * @throws NullPointerException if the sink is {@code null}.
+	 */
+	public void setMetricsSink(MetricsSink sink) {
+		if (sink == null) {
+			throw new NullPointerException("sink");
+		}
+		this.metrics = sink;
+	}
+
 	/**
 	 * Gets the current terminal model.
 	 * @return The current terminal model.
@@ -215,12 +901,30 @@ public class JTerminal extends JComponent {
 
 	/**
 	 * Prints a string to the terminal. This method is shorthand for:
-	 * {@code getModel().print(str);}
+	 * {@code getModel().print(str);} followed by scheduling a repaint of the
+	 * parts of the terminal which have changed. This may be called from any
+	 * thread if the model is thread-safe, such as a
+	 * {@link Vt100TerminalModel}.
 	 * @param str The string to print.
 	 * @throws NullPointerException if the string is null.
 	 */
 	public void print(String str) {
 		model.print(str);
+		modelChanged();
+	}
+
+	/**
+	 * Schedules a repaint of the parts of the terminal which have changed,
+	 * subject to the frame rate. This should be called after printing to the
+	 * model directly rather than through this component, for example with a
+	 * {@link com.grahamedgecombe.jterminal.io.TerminalPump}. It may be called
+	 * from any thread.
+	 */
+	public void modelChanged() {
+		if (inputTime.get() == 0) {
+			inputTime.compareAndSet(0, System.nanoTime());
+		}
+		scheduler.update();
 	}
 
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Coalesces updates from any thread into frames which are run on the event
+ * dispatch thread, no more often than the frame rate allows. If the last frame
+ * was long enough ago, an update causes a frame to run straight away, so
+ * occasional updates (such as echoing a key press) are not delayed.
+ * @author Graham Edgecombe
+ */
+final class RepaintScheduler {
+
+	/**
+	 * The task which runs each frame.
+	 */
+	private final Runnable frame;
+
+	/**
+	 * The timer used to delay frames.
+	 */
+	private final Timer timer;
+
+	/**
+	 * A flag indicating if a frame has been requested but not yet run.
+	 */
+	private final AtomicBoolean pending = new AtomicBoolean();
+
+	/**
+	 * The number of frames which have been run.
+	 */
+	private final AtomicLong frames = new AtomicLong();
+
+	/**
+	 * The number of updates which were merged into an already requested
+	 * frame.
+	 */
+	private final AtomicLong coalescedUpdates = new AtomicLong();
+
+	/**
+	 * The minimum time between frames in nanoseconds.
+	 */
+	private volatile long interval;
+
+	/**
+	 * The time the last frame was run, which is only accessed on the event
+	 * dispatch thread.
+	 */
+	private long lastFrame;
+
+	/**
+	 * Creates the repaint scheduler.
+	 * @param frameRate The maximum number of frames per second, or {@code 0}
+	 * for no limit.
+	 * @param frame The task which runs each frame.
+	 */
+	public RepaintScheduler(int frameRate, Runnable frame) {
+		this.frame = frame;
+		this.timer = new Timer(0, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent evt) {
+				runFrame();
+			}
+		});
+		this.timer.setRepeats(false);
+		setFrameRate(frameRate);
+		this.lastFrame = System.nanoTime() - interval;
+	}
+
+	/**
+	 * Sets the maximum number of frames per second.
+	 * @param frameRate The frame rate, or {@code 0} for no limit.
+	 * @throws IllegalArgumentException if the frame rate is negative.
+	 */
+	public void setFrameRate(int frameRate) {
+		if (frameRate < 0) {
+			throw new IllegalArgumentException("frameRate must not be negative");
+		}
+		interval = frameRate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / frameRate;
+	}
+
+	/**
+	 * Notifies the scheduler that something has changed and a frame is needed.
+	 * This may be called from any thread.
+	 */
+	public void update() {
+		if (pending.getAndSet(true)) {
+			coalescedUpdates.incrementAndGet();
+			return;
+		}
+
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				long delay = lastFrame + interval - System.nanoTime();
+				if (delay <= 0) {
+					runFrame();
+				} else {
+					timer.setInitialDelay((int) Math.max(TimeUnit.NANOSECONDS.toMillis(delay), 1));
+					timer.restart();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs a frame immediately, regardless of the frame rate. This must be
+	 * called on the event dispatch thread.
+	 */
+	public void flush() {
+		timer.stop();
+		runFrame();
+	}
+
+	/**
+	 * Runs a frame. This must be called on the event dispatch thread.
+	 */
+	private void runFrame() {
+		pending.set(false);
+		lastFrame = System.nanoTime();
+		frames.incrementAndGet();
+		frame.run();
+	}
+
+	/**
+	 * Gets the number of frames which have been run.
+	 * @return The number of frames.
+	 */
+	public long getFrames() {
+		return frames.get();
+	}
+
+	/**
+	 * Gets the number of updates which were merged into a frame that had
+	 * already been requested, rather than causing a frame of their own.
+	 * @return The number of coalesced updates.
+	 */
+	public long getCoalescedUpdates() {
+		return coalescedUpdates.get();
+	}
+
+}
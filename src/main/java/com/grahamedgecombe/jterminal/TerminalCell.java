@@ -26,16 +26,90 @@ import java.awt.Color;
 
 /**
  * Represents a single terminal cell which contains a character, background
- * color and foreground color.
+ * color, foreground color and a set of attributes.
+ * <p>
+ * Cells are immutable, so the same instance can be shared by every cell with
+ * the same contents. {@link #of(char, Color, Color, int)} returns shared
+ * instances from a bounded intern table rather than creating a new cell each
+ * time.
  * @author Graham Edgecombe
  */
 public class TerminalCell {
 
+	/**
+	 * The attribute flag for bold text.
+	 */
+	public static final int BOLD = 1;
+
+	/**
+	 * The attribute flag for faint text.
+	 */
+	public static final int FAINT = 1 << 1;
+
+	/**
+	 * The attribute flag for italic text.
+	 */
+	public static final int ITALIC = 1 << 2;
+
+	/**
+	 * The attribute flag for underlined text.
+	 */
+	public static final int UNDERLINE = 1 << 3;
+
+	/**
+	 * The attribute flag for blinking text.
+	 */
+	public static final int BLINK = 1 << 4;
+
+	/**
+	 * The attribute flag for text whose background and foreground colors are
+	 * swapped when it is displayed.
+	 */
+	public static final int INVERSE = 1 << 5;
+
+	/**
+	 * The attribute flag for text which is hidden.
+	 */
+	public static final int CONCEAL = 1 << 6;
+
+	/**
+	 * The attribute flag for text which is struck through.
+	 */
+	public static final int STRIKETHROUGH = 1 << 7;
+
+	/**
+	 * A mask of every attribute flag.
+	 */
+	public static final int ATTRIBUTE_MASK = 0xFF;
+
+	/**
+	 * The number of slots in the intern table, which must be a power of two.
+	 * With two slots per set, this is enough for every printable ASCII
+	 * character in every combination of the 16 ANSI colors with a few
+	 * backgrounds to stay resident.
+	 */
+	private static final int INTERN_TABLE_SIZE = 16384;
+
+	/**
+	 * The intern table. It is two-way set associative: each combination of
+	 * contents can only be stored in one of a pair of slots, and storing it
+	 * moves the cell in the first slot to the second, evicting the cell which
+	 * was there. As cells are immutable, the table may be used by several
+	 * threads without locking, a lost update only causes a later miss.
+	 */
+	private static final TerminalCell[] INTERN_TABLE = new TerminalCell[INTERN_TABLE_SIZE];
+
 	/**
 	 * The character.
 	 */
 	private final char character;
 
+	/**
+	 * The attributes. This is a {@code short} so that it fits in the padding
+	 * of the object on common JVMs, rather than making every cell larger.
+	 */
+	private final short attributes;
+
 	/**
 	 * The background color.
 	 */
@@ -56,16 +130,111 @@ public class TerminalCell {
 	 * are {@code null}.
 	 */
 	public TerminalCell(char character, Color backgroundColor, Color foregroundColor) {
+		this(character, backgroundColor, foregroundColor, 0);
+	}
+
+	/**
+	 * Creates a terminal cell with the specified character, background color,
+	 * foreground color and attributes.
+	 * @param character The character.
+	 * @param backgroundColor The background color.
+	 * @param foregroundColor The foreground color.
+	 * @param attributes The attribute flags, such as {@link #BOLD}.
+	 * @throws NullPointerException if the background or foreground color(s)
+	 * are {@code null}.
+	 * @throws IllegalArgumentException if the attributes contain an unknown
+	 * flag.
+	 */
+	public TerminalCell(char character, Color backgroundColor, Color foregroundColor, int attributes) {
 		if (backgroundColor == null) {
 			throw new NullPointerException("backgroundColor");
 		}
 		if (foregroundColor == null) {
 			throw new NullPointerException("foregroundColor");
 		}
+		if ((attributes & ~ATTRIBUTE_MASK) != 0) {
+			throw new IllegalArgumentException("unknown attribute flags");
+		}
 
 		this.character = character;
 		this.backgroundColor = backgroundColor;
 		this.foregroundColor = foregroundColor;
+		this.attributes = (short) attributes;
+	}
+
+	/**
+	 * Gets a cell with the specified character, background color and
+	 * foreground color and no attributes.
+	 * @param character The character.
+	 * @param backgroundColor The background color.
+	 * @param foregroundColor The foreground color.
+	 * @return The cell, which may be shared.
+	 * @throws NullPointerException if the background or foreground color(s)
+	 * are {@code null}.
+	 */
+	public static TerminalCell of(char character, Color backgroundColor, Color foregroundColor) {
+		return of(character, backgroundColor, foregroundColor, 0);
+	}
+
+	/**
+	 * Gets a cell with the specified character, background color, foreground
+	 * color and attributes. The cell is taken from the intern table if a cell
+	 * with the same character, attributes and color instances is there, so
+	 * printing the same few combinations of characters and palette colors
+	 * over and over does not allocate any cells.
+	 * <p>
+	 * Colors are compared by identity rather than with
+	 * {@link Color#equals(Object)}, so the cell returned always refers to the
+	 * color instances which were passed in.
+	 * @param character The character.
+	 * @param backgroundColor The background color.
+	 * @param foregroundColor The foreground color.
+	 * @param attributes The attribute flags, such as {@link #BOLD}.
+	 * @return The cell, which may be shared.
+	 * @throws NullPointerException if the background or foreground color(s)
+	 * are {@code null}.
+	 * @throws IllegalArgumentException if the attributes contain an unknown
+	 * flag.
+	 */
+	public static TerminalCell of(char character, Color backgroundColor, Color foregroundColor, int attributes) {
+		if (backgroundColor == null) {
+			throw new NullPointerException("backgroundColor");
+		}
+		if (foregroundColor == null) {
+			throw new NullPointerException("foregroundColor");
+		}
+
+		int hash = character * 0x9E3779B1 ^ backgroundColor.getRGB() * 0x85EBCA6B ^ foregroundColor.getRGB() * 0xC2B2AE35 ^ attributes;
+		int index = (hash ^ (hash >>> 16)) & (INTERN_TABLE_SIZE - 2);
+
+		TerminalCell first = INTERN_TABLE[index];
+		if (first != null && first.matches(character, backgroundColor, foregroundColor, attributes)) {
+			return first;
+		}
+
+		TerminalCell second = INTERN_TABLE[index + 1];
+		if (second != null && second.matches(character, backgroundColor, foregroundColor, attributes)) {
+			return second;
+		}
+
+		TerminalCell cell = new TerminalCell(character, backgroundColor, foregroundColor, attributes);
+		INTERN_TABLE[index + 1] = first;
+		INTERN_TABLE[index] = cell;
+		return cell;
+	}
+
+	/**
+	 * Checks if this cell has the specified contents, comparing colors by
+	 * identity.
+	 * @param character The character.
+	 * @param backgroundColor The background color.
+	 * @param foregroundColor The foreground color.
+	 * @param attributes The attribute flags.
+	 * @return {@code true} if it does, {@code false} if not.
+	 */
+	private boolean matches(char character, Color backgroundColor, Color foregroundColor, int attributes) {
+		return this.character == character && this.attributes == attributes
+				&& this.backgroundColor == backgroundColor && this.foregroundColor == foregroundColor;
 	}
 
 	/**
@@ -92,5 +261,22 @@ public class TerminalCell {
 		return foregroundColor;
 	}
 
+	/**
+	 * Gets the attributes.
+	 * @return The attribute flags, such as {@link #BOLD}.
+	 */
+	public int getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Checks if this cell has an attribute.
+	 * @param attribute The attribute flag.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean hasAttribute(int attribute) {
+		return (attributes & attribute) != 0;
+	}
+
 }
 
@@ -23,6 +23,7 @@
 package com.grahamedgecombe.jterminal;
 
 import java.awt.Color;
+import java.util.List;
 
 import com.grahamedgecombe.jterminal.bell.BellStrategy;
 
@@ -98,6 +99,69 @@ public interface TerminalModel {
 	 */
 	public TerminalCell getCell(int column, int row);
 
+	/**
+	 * Copies the cells in a row into an array.
+	 * @param row The row.
+	 * @param destination The array to copy the cells into, or {@code null}.
+	 * If it is {@code null} or shorter than the number of columns, a new array
+	 * is allocated.
+	 * @return The array which contains the cells.
+	 * @throws IndexOutOfBoundsException if the row number is out of bounds.
+	 */
+	public TerminalCell[] getRow(int row, TerminalCell[] destination);
+
+	/**
+	 * Sets every cell in a rectangular region to the same cell.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @param cell The cell, or {@code null} to empty the region.
+	 * @throws IndexOutOfBoundsException if any part of the region is out of
+	 * bounds or its width or height is negative.
+	 */
+	public void fillRegion(int column, int row, int width, int height, TerminalCell cell);
+
+	/**
+	 * Empties every cell in a rectangular region.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @throws IndexOutOfBoundsException if any part of the region is out of
+	 * bounds or its width or height is negative.
+	 */
+	public void clearRegion(int column, int row, int width, int height);
+
+	/**
+	 * Copies a rectangular region to another position. The source and
+	 * destination may overlap, in which case the destination contains the
+	 * cells which were in the source before the copy.
+	 * @param column The first column of the source.
+	 * @param row The first row of the source.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @param destinationColumn The first column of the destination.
+	 * @param destinationRow The first row of the destination.
+	 * @throws IndexOutOfBoundsException if any part of the source or
+	 * destination is out of bounds or the width or height is negative.
+	 */
+	public void copyRegion(int column, int row, int width, int height, int destinationColumn, int destinationRow);
+
+	/**
+	 * Scrolls the cells in a rectangular region up or down, emptying the rows
+	 * which are exposed. Cells outside the region are not changed.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @param n The number of rows to scroll by: positive to move the cells
+	 * up, negative to move them down.
+	 * @throws IndexOutOfBoundsException if any part of the region is out of
+	 * bounds or its width or height is negative.
+	 */
+	public void scrollRegion(int column, int row, int width, int height, int n);
+
 	/**
 	 * Prints the specified string to the terminal at the cursor position,
 	 * interpreting any escape sequences/special ASCII codes the model may
@@ -107,6 +171,47 @@ public interface TerminalModel {
 	 */
 	public void print(String str);
 
+	/**
+	 * Copies a range of rows and the cursor position into a snapshot. The
+	 * snapshot is consistent: it is taken between two changes to the model,
+	 * never part way through one. However, a model may apply a single call to
+	 * a method such as {@link #print(String)} as a series of smaller changes,
+	 * so a snapshot taken concurrently may contain only part of the output of
+	 * that call.
+	 * @param firstRow The first row.
+	 * @param rows The number of rows.
+	 * @param snapshot The snapshot to copy the rows into.
+	 * @throws IndexOutOfBoundsException if any of the rows are out of bounds.
+	 * @throws NullPointerException if the snapshot is {@code null}.
+	 */
+	public void snapshot(int firstRow, int rows, TerminalSnapshot snapshot);
+
+	/**
+	 * Gets the regions of the buffer which have changed since this method was
+	 * last called and resets them, so that a renderer can redraw only what has
+	 * changed. The regions include the old and new positions of the cursor if
+	 * it has moved.
+	 * @return The list of damaged regions, which is empty if nothing has
+	 * changed.
+	 */
+	public List<TerminalRegion> collectDamage();
+
+	/**
+	 * Gets the regions of the buffer which have changed, as
+	 * {@link #collectDamage()} does, and copies a range of rows and the cursor
+	 * position into a snapshot in the same step. A renderer which keeps what
+	 * it has drawn can then apply exactly the changes which the regions
+	 * describe, without a later change being drawn before it is reported.
+	 * @param firstRow The first row.
+	 * @param rows The number of rows.
+	 * @param snapshot The snapshot to copy the rows into.
+	 * @return The list of damaged regions, which is empty if nothing has
+	 * changed.
+	 * @throws IndexOutOfBoundsException if any of the rows are out of bounds.
+	 * @throws NullPointerException if the snapshot is {@code null}.
+	 */
+	public List<TerminalRegion> collectDamage(int firstRow, int rows, TerminalSnapshot snapshot);
+
 	/**
 	 * Gets the number of columns.
 	 * @return The number of columns.
@@ -125,6 +230,14 @@ public interface TerminalModel {
 	 */
 	public int getBufferSize();
 
+	/**
+	 * Checks if scroll margins are set which do not cover the whole screen.
+	 * While they are, a line feed at the bottom margin scrolls only the rows
+	 * between the margins, rather than the whole buffer.
+	 * @return {@code true} if scroll margins are set, {@code false} if not.
+	 */
+	public boolean hasScrollMargins();
+
 	/**
 	 * Gets the cursor row.
 	 * @return The cursor row.
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal;
+
+/**
+ * Represents a rectangular region of cells in a terminal.
+ * <p>
+ * A region returned by {@link TerminalModel#collectDamage()} may also record
+ * that its rows have scrolled, in which case {@link #getScroll()} is non-zero.
+ * A renderer can then move the pixels it last drew for the region instead of
+ * redrawing all of it, or treat it like any other damaged region.
+ * @author Graham Edgecombe
+ */
+public final class TerminalRegion {
+
+	/**
+	 * The first column.
+	 */
+	private final int column;
+
+	/**
+	 * The first row.
+	 */
+	private final int row;
+
+	/**
+	 * The number of columns.
+	 */
+	private final int columns;
+
+	/**
+	 * The number of rows.
+	 */
+	private final int rows;
+
+	/**
+	 * The number of rows the contents have scrolled up by.
+	 */
+	private final int scroll;
+
+	/**
+	 * Creates a terminal region.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param columns The number of columns.
+	 * @param rows The number of rows.
+	 * @throws IllegalArgumentException if any of the values are negative.
+	 */
+	public TerminalRegion(int column, int row, int columns, int rows) {
+		this(column, row, columns, rows, 0);
+	}
+
+	/**
+	 * Creates a terminal region whose contents have scrolled.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param columns The number of columns.
+	 * @param rows The number of rows.
+	 * @param scroll The number of rows the contents have scrolled up by, or a
+	 * negative number if they have scrolled down.
+	 * @throws IllegalArgumentException if any of the position and size values
+	 * are negative, or the contents have scrolled by the height of the region
+	 * or more.
+	 */
+	public TerminalRegion(int column, int row, int columns, int rows, int scroll) {
+		if (column < 0 || row < 0 || columns < 0 || rows < 0) {
+			throw new IllegalArgumentException("Zero or positive values only allowed for the position and size.");
+		}
+		if (scroll != 0 && Math.abs(scroll) >= rows) {
+			throw new IllegalArgumentException("The region has scrolled too far.");
+		}
+		this.column = column;
+		this.row = row;
+		this.columns = columns;
+		this.rows = rows;
+		this.scroll = scroll;
+	}
+
+	/**
+	 * Gets the first column.
+	 * @return The first column.
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Gets the first row.
+	 * @return The first row.
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Gets the number of columns.
+	 * @return The number of columns.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 * @return The number of rows.
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of rows the contents of this region have scrolled by.
+	 * If it is positive, the contents which were drawn in the row
+	 * {@code getRow() + getScroll()} are now in {@code getRow()}, and so on.
+	 * Rows which were exposed by the scroll, and any other changes, are
+	 * reported as separate regions.
+	 * @return The number of rows the contents have scrolled up by, a negative
+	 * number if they have scrolled down, or {@code 0} if they have not
+	 * scrolled.
+	 */
+	public int getScroll() {
+		return scroll;
+	}
+
+	@Override
+	public String toString() {
+		return "TerminalRegion [column=" + column + ", row=" + row + ", columns=" + columns + ", rows=" + rows + ", scroll=" + scroll + "]";
+	}
+
+}
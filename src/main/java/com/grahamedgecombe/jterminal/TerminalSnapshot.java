@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal;
+
+/**
+ * A copy of a range of rows in a {@link TerminalModel} and the position of its
+ * cursor, taken at a single point in time. Renderers can read a snapshot
+ * without any further interaction with the model, so they do not observe
+ * changes made while they are drawing. A snapshot can be reused, in which case
+ * its arrays are only reallocated if they are too small.
+ * @author Graham Edgecombe
+ */
+public final class TerminalSnapshot {
+
+	/**
+	 * The first row in the snapshot.
+	 */
+	private int firstRow = 0;
+
+	/**
+	 * The number of rows in the snapshot.
+	 */
+	private int rows = 0;
+
+	/**
+	 * The number of columns in the snapshot.
+	 */
+	private int columns = 0;
+
+	/**
+	 * The cursor column.
+	 */
+	private int cursorColumn = 0;
+
+	/**
+	 * The cursor row.
+	 */
+	private int cursorRow = 0;
+
+	/**
+	 * The array of cells, indexed by row and then by column.
+	 */
+	private TerminalCell[][] cells = new TerminalCell[0][0];
+
+	/**
+	 * Resets the snapshot so it can hold the specified range of rows. This is
+	 * intended to be called by {@link TerminalModel} implementations, which
+	 * should then fill in each row with {@link #getRow(int)}.
+	 * @param firstRow The first row.
+	 * @param rows The number of rows.
+	 * @param columns The number of columns.
+	 * @param cursorColumn The cursor column.
+	 * @param cursorRow The cursor row.
+	 * @throws IllegalArgumentException if the first row, number of rows or
+	 * number of columns is negative.
+	 */
+	public void reset(int firstRow, int rows, int columns, int cursorColumn, int cursorRow) {
+		if (firstRow < 0 || rows < 0 || columns < 0) {
+			throw new IllegalArgumentException("Zero or positive values only allowed for the first row, rows and columns.");
+		}
+		if (cells.length < rows || (cells.length > 0 && cells[0].length != columns)) {
+			cells = new TerminalCell[rows][columns];
+		}
+		this.firstRow = firstRow;
+		this.rows = rows;
+		this.columns = columns;
+		this.cursorColumn = cursorColumn;
+		this.cursorRow = cursorRow;
+	}
+
+	/**
+	 * Gets the array which holds the cells in a row. The array may be longer
+	 * than the number of columns.
+	 * @param row The row.
+	 * @return The array of cells.
+	 * @throws IndexOutOfBoundsException if the row is not in the snapshot.
+	 */
+	public TerminalCell[] getRow(int row) {
+		if (row < firstRow || row >= firstRow + rows) {
+			throw new IndexOutOfBoundsException();
+		}
+		return cells[row - firstRow];
+	}
+
+	/**
+	 * Gets a cell.
+	 * @param column The column.
+	 * @param row The row.
+	 * @return The cell.
+	 * @throws IndexOutOfBoundsException if the column and/or row number(s) are
+	 * not in the snapshot.
+	 */
+	public TerminalCell getCell(int column, int row) {
+		if (column < 0 || column >= columns) {
+			throw new IndexOutOfBoundsException();
+		}
+		return getRow(row)[column];
+	}
+
+	/**
+	 * Gets the first row.
+	 * @return The first row.
+	 */
+	public int getFirstRow() {
+		return firstRow;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 * @return The number of rows.
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of columns.
+	 * @return The number of columns.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Gets the cursor column.
+	 * @return The cursor column.
+	 */
+	public int getCursorColumn() {
+		return cursorColumn;
+	}
+
+	/**
+	 * Gets the cursor row.
+	 * @return The cursor row.
+	 */
+	public int getCursorRow() {
+		return cursorRow;
+	}
+
+}
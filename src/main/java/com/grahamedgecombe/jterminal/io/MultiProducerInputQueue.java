@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.grahamedgecombe.jterminal.vt100.InputContext;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A queue which lets several threads, such as those reading the standard
+ * output and standard error of a process, feed a single
+ * {@link Vt100TerminalModel}.
+ * <p>
+ * Each {@link Producer} has its own {@link InputContext}, so a control
+ * sequence which one producer writes in several pieces is not broken up by
+ * output from another producer. Writes are printed by a single consumer in
+ * the order in which they were added to the queue. Producers never take a
+ * lock: each write is copied into a chunk which is added to a lock-free
+ * queue, and the consumer is only woken if it is waiting for output.
+ * <p>
+ * The queue is unbounded. Use a {@link TerminalInputQueue} when a single
+ * producer needs to be slowed down to the speed of the terminal.
+ * @author Graham Edgecombe
+ */
+public final class MultiProducerInputQueue implements Closeable {
+
+	/**
+	 * A source of output for the queue.
+	 * @author Graham Edgecombe
+	 */
+	public final class Producer {
+
+		/**
+		 * The input context.
+		 */
+		private final InputContext context = model.createInputContext();
+
+		/**
+		 * Creates a producer.
+		 */
+		private Producer() {
+
+		}
+
+		/**
+		 * Adds UTF-8 encoded bytes to the queue. The bytes are copied, so the
+		 * array may be reused as soon as this method returns.
+		 * @param bytes The array which contains the bytes.
+		 * @param offset The index of the first byte.
+		 * @param length The number of bytes.
+		 * @throws NullPointerException if the array is {@code null}.
+		 * @throws IndexOutOfBoundsException if the range is not within the
+		 * array.
+		 * @throws IllegalStateException if the queue has been closed.
+		 */
+		public void write(byte[] bytes, int offset, int length) {
+			if (bytes == null) {
+				throw new NullPointerException("bytes");
+			}
+			if (offset < 0 || length < 0 || offset + length > bytes.length || offset + length < 0) {
+				throw new IndexOutOfBoundsException();
+			}
+			byte[] copy = new byte[length];
+			System.arraycopy(bytes, offset, copy, 0, length);
+			add(new Chunk(context, copy, null), length);
+		}
+
+		/**
+		 * Adds a string to the queue.
+		 * @param str The string.
+		 * @throws NullPointerException if the string is {@code null}.
+		 * @throws IllegalStateException if the queue has been closed.
+		 */
+		public void write(String str) {
+			if (str == null) {
+				throw new NullPointerException("str");
+			}
+			add(new Chunk(context, null, str), str.length());
+		}
+
+	}
+
+	/**
+	 * A piece of output which has been written by a producer.
+	 * @author Graham Edgecombe
+	 */
+	private static final class Chunk {
+
+		/**
+		 * The input context of the producer.
+		 */
+		private final InputContext context;
+
+		/**
+		 * The bytes, or {@code null} if this chunk is a string.
+		 */
+		private final byte[] bytes;
+
+		/**
+		 * The string, or {@code null} if this chunk is an array of bytes.
+		 */
+		private final String text;
+
+		/**
+		 * Creates a chunk.
+		 * @param context The input context of the producer.
+		 * @param bytes The bytes, or {@code null}.
+		 * @param text The string, or {@code null}.
+		 */
+		public Chunk(InputContext context, byte[] bytes, String text) {
+			this.context = context;
+			this.bytes = bytes;
+			this.text = text;
+		}
+
+		/**
+		 * Prints the chunk.
+		 */
+		public void print() {
+			if (bytes != null) {
+				context.print(bytes, 0, bytes.length);
+			} else {
+				context.print(text);
+			}
+		}
+
+	}
+
+	/**
+	 * The bit of the state which is set once the queue has been closed. The
+	 * other bits count the producers which are part way through adding a
+	 * chunk.
+	 */
+	private static final int CLOSED = 0x80000000;
+
+	/**
+	 * A runnable which does nothing.
+	 */
+	private static final Runnable NOP_LISTENER = new Runnable() {
+		@Override
+		public void run() {
+			/* empty */
+		}
+	};
+
+	/**
+	 * The model.
+	 */
+	private final Vt100TerminalModel model;
+
+	/**
+	 * A runnable which is run after each group of chunks has been printed.
+	 */
+	private final Runnable listener;
+
+	/**
+	 * The queued chunks.
+	 */
+	private final ConcurrentLinkedQueue<Chunk> chunks = new ConcurrentLinkedQueue<Chunk>();
+
+	/**
+	 * The number of chunks which have been written.
+	 */
+	private final AtomicLong written = new AtomicLong();
+
+	/**
+	 * The number of bytes and characters which have been written.
+	 */
+	private final AtomicLong writtenLength = new AtomicLong();
+
+	/**
+	 * The thread which is running {@link #run()}, or {@code null} if there is
+	 * none.
+	 */
+	private volatile Thread consumer;
+
+	/**
+	 * A flag indicating if the consumer is about to wait for output, in which
+	 * case producers must wake it up.
+	 */
+	private volatile boolean waiting = false;
+
+	/**
+	 * The {@link #CLOSED} flag and the number of producers which are part way
+	 * through adding a chunk.
+	 */
+	private final AtomicInteger state = new AtomicInteger();
+
+	/**
+	 * Creates a queue.
+	 * @param model The model.
+	 * @throws NullPointerException if the model is {@code null}.
+	 */
+	public MultiProducerInputQueue(Vt100TerminalModel model) {
+		this(model, NOP_LISTENER);
+	}
+
+	/**
+	 * Creates a queue.
+	 * @param model The model.
+	 * @param listener A runnable which is run by the consumer after each group
+	 * of chunks has been printed, typically to call
+	 * {@link com.grahamedgecombe.jterminal.JTerminal#modelChanged()}.
+	 * @throws NullPointerException if the model or listener is {@code null}.
+	 */
+	public MultiProducerInputQueue(Vt100TerminalModel model, Runnable listener) {
+		if (model == null) {
+			throw new NullPointerException("model");
+		}
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+		this.model = model;
+		this.listener = listener;
+	}
+
+	/**
+	 * Creates a producer with its own parser state.
+	 * @return The producer.
+	 */
+	public Producer createProducer() {
+		return this.new Producer();
+	}
+
+	/**
+	 * Adds a chunk to the queue and wakes up the consumer if necessary.
+	 * @param chunk The chunk.
+	 * @param length The length of the chunk.
+	 * @throws IllegalStateException if the queue has been closed.
+	 */
+	private void add(Chunk chunk, int length) {
+		for (;;) {
+			int current = state.get();
+			if ((current & CLOSED) != 0) {
+				throw new IllegalStateException("closed");
+			}
+			if (state.compareAndSet(current, current + 1)) {
+				break;
+			}
+		}
+		try {
+			chunks.offer(chunk);
+			written.incrementAndGet();
+			writtenLength.addAndGet(length);
+		} finally {
+			state.decrementAndGet();
+		}
+		if (waiting) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Prints every chunk which is in the queue. This must only be called by
+	 * one thread at a time.
+	 * @return The number of chunks which were printed.
+	 */
+	public int drain() {
+		int count = 0;
+		Chunk chunk;
+		while ((chunk = chunks.poll()) != null) {
+			chunk.print();
+			count++;
+		}
+		if (count > 0) {
+			listener.run();
+		}
+		return count;
+	}
+
+	/**
+	 * Prints chunks as they are written until the queue is closed and empty,
+	 * or the thread is interrupted.
+	 */
+	public void run() {
+		consumer = Thread.currentThread();
+		try {
+			while (!consumer.isInterrupted()) {
+				if (drain() > 0) {
+					continue;
+				}
+				if (state.get() == CLOSED) {
+					/*
+					 * no producer is part way through adding a chunk and none
+					 * can start, so once the queue is empty it stays empty
+					 */
+					if (drain() == 0) {
+						return;
+					}
+					continue;
+				}
+
+				/*
+				 * A producer which adds a chunk after the queue is checked
+				 * below, or which finishes adding one after the queue is
+				 * closed, sees the flag and unparks this thread.
+				 */
+				waiting = true;
+				if (chunks.isEmpty() && state.get() != CLOSED) {
+					LockSupport.park(this);
+				}
+				waiting = false;
+			}
+		} finally {
+			consumer = null;
+		}
+	}
+
+	/**
+	 * Closes the queue. Producers may not write any more output, but the
+	 * consumer prints what has already been written before it stops.
+	 */
+	@Override
+	public void close() {
+		for (;;) {
+			int current = state.get();
+			if (state.compareAndSet(current, current | CLOSED)) {
+				break;
+			}
+		}
+		Thread thread = consumer;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Gets the number of chunks which are waiting to be printed. This takes
+	 * time proportional to the number of chunks.
+	 * @return The number of chunks.
+	 */
+	public int getDepth() {
+		return chunks.size();
+	}
+
+	/**
+	 * Gets the number of chunks which have been written.
+	 * @return The number of chunks.
+	 */
+	public long getWrittenChunks() {
+		return written.get();
+	}
+
+	/**
+	 * Gets the total length of the chunks which have been written, counting
+	 * bytes for arrays and characters for strings.
+	 * @return The total length.
+	 */
+	public long getWrittenLength() {
+		return writtenLength.get();
+	}
+
+}
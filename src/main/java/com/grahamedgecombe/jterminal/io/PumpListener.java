@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import java.io.IOException;
+
+/**
+ * An interface which classes may use to listen to events from a
+ * {@link TerminalPump}. Methods are called on the thread which is running the
+ * pump, except that {@link #closed(TerminalPump, IOException)} is called on the
+ * thread which closed the pump if it was closed explicitly.
+ * @author Graham Edgecombe
+ */
+public interface PumpListener {
+
+	/**
+	 * Called after a batch of output has been printed to the model. This is
+	 * typically used to call {@link com.grahamedgecombe.jterminal.JTerminal#modelChanged()}.
+	 * @param pump The pump.
+	 */
+	public void printed(TerminalPump pump);
+
+	/**
+	 * Called once when the pump stops, either because the end of the stream
+	 * was reached, the pump was closed or reading failed.
+	 * @param pump The pump.
+	 * @param cause The exception which caused the pump to stop, or
+	 * {@code null} if it stopped normally.
+	 */
+	public void closed(TerminalPump pump, IOException cause);
+
+}
@@ -0,0 +1,563 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A bounded queue of output between a producer, such as a thread reading the
+ * output of a process, and a consumer which prints it to a
+ * {@link Vt100TerminalModel}.
+ * <p>
+ * Once the number of queued bytes reaches the high watermark, the producer is
+ * paused until the consumer has brought it back down to the low watermark,
+ * so a process which produces output faster than the terminal can process it
+ * is slowed down rather than being buffered without limit.
+ * <p>
+ * If fast-forwarding is enabled and the consumer has fallen behind, it looks
+ * for plain text in the queue which contains more line feeds than the model
+ * has rows in its buffer. Everything before the last buffer's worth of lines
+ * would be scrolled away before it could be displayed, so it is skipped. The
+ * model ends up in exactly the same state as it would have done if every
+ * byte had been printed.
+ * @author Graham Edgecombe
+ */
+public final class TerminalInputQueue implements Closeable {
+
+	/**
+	 * The default capacity in bytes.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	/**
+	 * The maximum number of bytes the consumer takes from the queue at once,
+	 * unless it is fast-forwarding.
+	 */
+	private static final int BATCH_SIZE = 65536;
+
+	/**
+	 * A runnable which does nothing.
+	 */
+	private static final Runnable NOP_LISTENER = new Runnable() {
+		@Override
+		public void run() {
+			/* empty */
+		}
+	};
+
+	/**
+	 * The model.
+	 */
+	private final Vt100TerminalModel model;
+
+	/**
+	 * A runnable which is run after each batch has been printed.
+	 */
+	private final Runnable listener;
+
+	/**
+	 * The circular buffer which holds the queued bytes.
+	 */
+	private final byte[] queue;
+
+	/**
+	 * The line feeds which are printed in place of the output which is
+	 * skipped when fast-forwarding, created when it is first needed.
+	 */
+	private byte[] lineFeeds;
+
+	/**
+	 * The number of queued bytes at which the producer is paused.
+	 */
+	private final int highWatermark;
+
+	/**
+	 * The number of queued bytes at which the producer is resumed.
+	 */
+	private final int lowWatermark;
+
+	/**
+	 * The lock which guards the queue.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * The condition which the producer waits on while it is paused.
+	 */
+	private final Condition resumed = lock.newCondition();
+
+	/**
+	 * The condition which the consumer waits on while the queue is empty.
+	 */
+	private final Condition notEmpty = lock.newCondition();
+
+	/**
+	 * The index of the first queued byte.
+	 */
+	private int head = 0;
+
+	/**
+	 * The number of queued bytes.
+	 */
+	private int size = 0;
+
+	/**
+	 * A flag indicating if the producer is paused.
+	 */
+	private boolean paused = false;
+
+	/**
+	 * A flag indicating if the queue has been closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * The number of times the producer has been paused.
+	 */
+	private long pauses = 0;
+
+	/**
+	 * The total time the producer has spent paused in nanoseconds.
+	 */
+	private long pausedTime = 0;
+
+	/**
+	 * The number of bytes which have been skipped by fast-forwarding.
+	 */
+	private long skippedBytes = 0;
+
+	/**
+	 * A flag indicating if fast-forwarding is enabled.
+	 */
+	private volatile boolean fastForward = false;
+
+	/**
+	 * Creates a queue with the default capacity, a high watermark of three
+	 * quarters of the capacity and a low watermark of a quarter of it.
+	 * @param model The model.
+	 * @throws NullPointerException if the model is {@code null}.
+	 */
+	public TerminalInputQueue(Vt100TerminalModel model) {
+		this(model, DEFAULT_CAPACITY, DEFAULT_CAPACITY / 4 * 3, DEFAULT_CAPACITY / 4);
+	}
+
+	/**
+	 * Creates a queue.
+	 * @param model The model.
+	 * @param capacity The capacity in bytes.
+	 * @param highWatermark The number of queued bytes at which the producer is
+	 * paused.
+	 * @param lowWatermark The number of queued bytes at which the producer is
+	 * resumed.
+	 * @throws NullPointerException if the model is {@code null}.
+	 * @throws IllegalArgumentException if the watermarks are not in the order
+	 * {@code 0 <= lowWatermark < highWatermark <= capacity}.
+	 */
+	public TerminalInputQueue(Vt100TerminalModel model, int capacity, int highWatermark, int lowWatermark) {
+		this(model, capacity, highWatermark, lowWatermark, NOP_LISTENER);
+	}
+
+	/**
+	 * Creates a queue.
+	 * @param model The model.
+	 * @param capacity The capacity in bytes.
+	 * @param highWatermark The number of queued bytes at which the producer is
+	 * paused.
+	 * @param lowWatermark The number of queued bytes at which the producer is
+	 * resumed.
+	 * @param listener A runnable which is run by the consumer after each batch
+	 * has been printed, typically to call
+	 * {@link com.grahamedgecombe.jterminal.JTerminal#modelChanged()}.
+	 * @throws NullPointerException if the model or listener is {@code null}.
+	 * @throws IllegalArgumentException if the watermarks are not in the order
+	 * {@code 0 <= lowWatermark < highWatermark <= capacity}.
+	 */
+	public TerminalInputQueue(Vt100TerminalModel model, int capacity, int highWatermark, int lowWatermark, Runnable listener) {
+		if (model == null) {
+			throw new NullPointerException("model");
+		}
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+		if (lowWatermark < 0 || lowWatermark >= highWatermark || highWatermark > capacity) {
+			throw new IllegalArgumentException("The watermarks must satisfy 0 <= low < high <= capacity.");
+		}
+		this.model = model;
+		this.listener = listener;
+		this.queue = new byte[capacity];
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+	}
+
+	/**
+	 * Checks if fast-forwarding is enabled.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isFastForward() {
+		return fastForward;
+	}
+
+	/**
+	 * Sets whether output which would be scrolled away before it could be
+	 * displayed is skipped when the consumer has fallen behind. This is
+	 * disabled by default.
+	 * @param fastForward {@code true} to enable fast-forwarding,
+	 * {@code false} to disable it.
+	 */
+	public void setFastForward(boolean fastForward) {
+		this.fastForward = fastForward;
+	}
+
+	/**
+	 * Adds bytes to the queue, waiting while the producer is paused.
+	 * @param bytes The array which contains the bytes.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @throws NullPointerException if the array is {@code null}.
+	 * @throws IndexOutOfBoundsException if the range is not within the array.
+	 * @throws IllegalStateException if the queue has been closed.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public void write(byte[] bytes, int offset, int length) throws InterruptedException {
+		if (bytes == null) {
+			throw new NullPointerException("bytes");
+		}
+		if (offset < 0 || length < 0 || offset + length > bytes.length || offset + length < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		lock.lock();
+		try {
+			while (length > 0) {
+				if (paused || size == queue.length) {
+					long start = System.nanoTime();
+					try {
+						while ((paused || size == queue.length) && !closed) {
+							resumed.await();
+						}
+					} finally {
+						pausedTime += System.nanoTime() - start;
+					}
+				}
+				if (closed) {
+					throw new IllegalStateException("closed");
+				}
+
+				int count = Math.min(length, queue.length - size);
+				int tail = (head + size) % queue.length;
+				int first = Math.min(count, queue.length - tail);
+				System.arraycopy(bytes, offset, queue, tail, first);
+				System.arraycopy(bytes, offset + first, queue, 0, count - first);
+				size += count;
+				offset += count;
+				length -= count;
+
+				if (size >= highWatermark && !paused) {
+					paused = true;
+					pauses++;
+				}
+				notEmpty.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Prints queued output to the model until the queue is closed and
+	 * empty.
+	 */
+	public void run() {
+		try {
+			while (drain() >= 0);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for output to be queued, then prints a batch of it to the model.
+	 * The batch is printed straight out of the queue, and the space it
+	 * occupies is only released to the producer once it has been printed, so
+	 * only one thread may act as the consumer.
+	 * @return The number of bytes taken from the queue, or {@code -1} if the
+	 * queue has been closed and is empty.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public int drain() throws InterruptedException {
+		int length;
+		lock.lock();
+		try {
+			while (size == 0) {
+				if (closed) {
+					return -1;
+				}
+				notEmpty.await();
+			}
+
+			length = fastForward && paused ? size : Math.min(size, BATCH_SIZE);
+		} finally {
+			lock.unlock();
+		}
+
+		/*
+		 * the producer only writes to the free part of the queue, so the batch
+		 * can be read without holding the lock
+		 */
+		int start = 0;
+		if (fastForward && model.isAtSequenceBoundary()) {
+			start = skip(length);
+		}
+		print(start, length);
+
+		lock.lock();
+		try {
+			head = (head + length) % queue.length;
+			size -= length;
+
+			if (paused && size <= lowWatermark) {
+				paused = false;
+				resumed.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		listener.run();
+		return length;
+	}
+
+	/**
+	 * Prints part of the batch at the head of the queue to the model, which
+	 * may wrap around the end of the circular buffer.
+	 * @param start The index of the first byte, relative to the head.
+	 * @param end The index after the last byte, relative to the head.
+	 */
+	private void print(int start, int end) {
+		int offset = (head + start) % queue.length;
+		int length = end - start;
+		int first = Math.min(length, queue.length - offset);
+		model.print(queue, offset, first);
+		model.print(queue, 0, length - first);
+	}
+
+	/**
+	 * Gets a byte in the batch at the head of the queue.
+	 * @param index The index of the byte, relative to the head.
+	 * @return The byte.
+	 */
+	private byte get(int index) {
+		index += head;
+		if (index >= queue.length) {
+			index -= queue.length;
+		}
+		return queue[index];
+	}
+
+	/**
+	 * Skips the part of a batch which would be scrolled away before it could
+	 * be displayed, if there is one, and moves the cursor as if it had been
+	 * printed.
+	 * <p>
+	 * Only plain text is skipped: printable characters, carriage returns,
+	 * line feeds and tabs. Let {@code B} be the number of rows in the buffer.
+	 * Within plain text, every line feed moves the cursor down a row, and
+	 * once it is below the last row every further line feed scrolls the
+	 * buffer. After {@code B} line feeds from any position, the cursor is in
+	 * the first column just below the last row. After {@code B} more, every
+	 * row that was in the buffer has been scrolled away. So if the plain text
+	 * at the start of the batch contains at least {@code 2B} line feeds,
+	 * everything up to the last {@code B} of them can be replaced with
+	 * {@code B} line feeds.
+	 * <p>
+	 * This only holds while the model has no scroll margins, as a line feed
+	 * at the bottom margin scrolls just the rows between the margins, so
+	 * nothing is skipped while they are set.
+	 * @param length The length of the batch.
+	 * @return The index of the first byte in the batch which still needs to be
+	 * printed.
+	 */
+	private int skip(int length) {
+		if (model.hasScrollMargins()) {
+			return 0;
+		}
+
+		int rows = model.getBufferSize();
+		int lines = 0;
+		int remaining = 0;
+		int minimum = 0x80;
+		int end = 0;
+
+		/* find the plain text at the start of the batch */
+		for (; end < length; end++) {
+			int b = get(end) & 0xFF;
+			if (remaining > 0) {
+				if ((b & 0xC0) != 0x80 || b < minimum) {
+					break;
+				}
+				remaining--;
+				minimum = 0x80;
+			} else if (b == '\n') {
+				lines++;
+			} else if ((b >= 0x20 && b < 0x7F) || b == '\r' || b == '\t') {
+				continue;
+			} else if (b >= 0xC2 && b < 0xE0) {
+				/* U+0080 to U+009F are C1 control characters */
+				remaining = 1;
+				minimum = b == 0xC2 ? 0xA0 : 0x80;
+			} else if (b >= 0xE0 && b < 0xF0) {
+				remaining = 2;
+			} else if (b >= 0xF0 && b < 0xF5) {
+				remaining = 3;
+			} else {
+				break;
+			}
+		}
+
+		if (lines < rows * 2) {
+			return 0;
+		}
+
+		/* find the line feed before the last B line feeds */
+		int skip = lines - rows;
+		int start = 0;
+		while (skip > 0) {
+			if (get(start++) == '\n') {
+				skip--;
+			}
+		}
+
+		if (lineFeeds == null) {
+			lineFeeds = new byte[rows];
+			Arrays.fill(lineFeeds, (byte) '\n');
+		}
+		model.print(lineFeeds, 0, rows);
+
+		lock.lock();
+		try {
+			skippedBytes += start;
+		} finally {
+			lock.unlock();
+		}
+		return start;
+	}
+
+	/**
+	 * Closes the queue. The producer may not add any more output, but the
+	 * consumer prints what has already been queued before it stops.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			resumed.signalAll();
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the capacity.
+	 * @return The capacity in bytes.
+	 */
+	public int getCapacity() {
+		return queue.length;
+	}
+
+	/**
+	 * Gets the number of queued bytes.
+	 * @return The number of queued bytes.
+	 */
+	public int getDepth() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if the producer is paused.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isPaused() {
+		lock.lock();
+		try {
+			return paused;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of times the producer has been paused because the high
+	 * watermark was reached.
+	 * @return The number of pauses.
+	 */
+	public long getPauseCount() {
+		lock.lock();
+		try {
+			return pauses;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the total time the producer has spent waiting in
+	 * {@link #write(byte[], int, int)}.
+	 * @param unit The unit to return the time in.
+	 * @return The time.
+	 */
+	public long getPausedTime(TimeUnit unit) {
+		lock.lock();
+		try {
+			return unit.convert(pausedTime, TimeUnit.NANOSECONDS);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of bytes which have been skipped by fast-forwarding.
+	 * @return The number of bytes.
+	 */
+	public long getSkippedBytes() {
+		lock.lock();
+		try {
+			return skippedBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Runs the {@link TerminalPump}s of many non-blocking channels on a single
+ * thread with a {@link Selector}. All of the pumps share one direct buffer, so
+ * the memory used does not grow with the number of terminals.
+ * @author Graham Edgecombe
+ */
+public final class TerminalMultiplexer implements Closeable {
+
+	/**
+	 * The selector.
+	 */
+	private final Selector selector;
+
+	/**
+	 * The buffer shared by every pump.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The thread which runs the selector.
+	 */
+	private final Thread thread;
+
+	/**
+	 * Pumps which are waiting to be registered with the selector. Pumps are
+	 * added while holding its lock so that none are added after the selector
+	 * thread has closed those which are left.
+	 */
+	private final Queue<TerminalPump> pending = new ConcurrentLinkedQueue<TerminalPump>();
+
+	/**
+	 * A flag indicating if the multiplexer has been closed.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates and starts a multiplexer with the default buffer size.
+	 * @throws IOException if the selector could not be opened.
+	 */
+	public TerminalMultiplexer() throws IOException {
+		this(TerminalPump.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates and starts a multiplexer.
+	 * @param bufferSize The size of the shared buffer, which is the most output
+	 * that is printed to a single terminal in one batch.
+	 * @throws IllegalArgumentException if the buffer size is not positive.
+	 * @throws IOException if the selector could not be opened.
+	 */
+	public TerminalMultiplexer(int bufferSize) throws IOException {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Positive values only allowed for buffer size.");
+		}
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.selector = Selector.open();
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				select();
+			}
+		}, "TerminalMultiplexer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Registers a channel, which is put into non-blocking mode, and starts
+	 * printing its output to a model.
+	 * @param channel The channel, which must also be a
+	 * {@link ReadableByteChannel}.
+	 * @param model The model.
+	 * @param listener The listener.
+	 * @return The pump, which may be closed to stop printing the output of the
+	 * channel and close it.
+	 * @throws NullPointerException if any argument is {@code null}.
+	 * @throws IllegalArgumentException if the channel is not readable.
+	 * @throws IllegalStateException if the multiplexer has been closed.
+	 * @throws IOException if the channel could not be put into non-blocking
+	 * mode.
+	 */
+	public TerminalPump register(SelectableChannel channel, Vt100TerminalModel model, PumpListener listener) throws IOException {
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		if (!(channel instanceof ReadableByteChannel)) {
+			throw new IllegalArgumentException("channel is not readable");
+		}
+		TerminalPump pump = new TerminalPump((ReadableByteChannel) channel, model, listener, buffer.capacity());
+		channel.configureBlocking(false);
+		synchronized (pending) {
+			if (closed) {
+				throw new IllegalStateException("closed");
+			}
+			pending.add(pump);
+		}
+		selector.wakeup();
+		return pump;
+	}
+
+	/**
+	 * Stops the multiplexer and closes every pump which is registered with it.
+	 * This waits for the thread which runs the selector to stop, unless it is
+	 * called on that thread.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException {
+		closed = true;
+		selector.wakeup();
+		if (Thread.currentThread() != thread) {
+			thread.join();
+		}
+	}
+
+	/**
+	 * Stops the multiplexer without waiting for the thread which runs the
+	 * selector to stop.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	/**
+	 * Runs the selector until the multiplexer is closed.
+	 */
+	private void select() {
+		try {
+			while (!closed) {
+				selector.select();
+				registerPending();
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+
+					TerminalPump pump = (TerminalPump) key.attachment();
+					try {
+						if (pump.pump(buffer) < 0) {
+							key.cancel();
+						}
+					} catch (IOException ex) {
+						key.cancel();
+						pump.close(ex);
+					}
+				}
+			}
+		} catch (IOException ex) {
+			/* the selector failed, so stop and close every pump */
+		} finally {
+			synchronized (pending) {
+				TerminalPump pump;
+				while ((pump = pending.poll()) != null) {
+					pump.close();
+				}
+			}
+			for (SelectionKey key : selector.keys()) {
+				((TerminalPump) key.attachment()).close();
+			}
+			try {
+				selector.close();
+			} catch (IOException ex) {
+				/* ignore, the multiplexer is stopping anyway */
+			}
+		}
+	}
+
+	/**
+	 * Registers any pending pumps with the selector.
+	 */
+	private void registerPending() {
+		TerminalPump pump;
+		while ((pump = pending.poll()) != null) {
+			try {
+				((SelectableChannel) pump.getChannel()).register(selector, SelectionKey.OP_READ, pump);
+			} catch (ClosedChannelException ex) {
+				pump.close();
+			}
+		}
+	}
+
+}
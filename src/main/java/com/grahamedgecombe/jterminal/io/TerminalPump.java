@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Copies output from a channel into a {@link Vt100TerminalModel}.
+ * <p>
+ * Output is read into a direct buffer, printed to the model with
+ * {@link Vt100TerminalModel#print(ByteBuffer)} and the listener is notified
+ * once per batch rather than once per read. A pump on a blocking channel, such
+ * as the output of a {@link Process}, is {@link #run() run} on a thread of its
+ * own, or on a thread pool. Pumps on non-blocking channels, such as sockets and
+ * pipes, can instead be registered with a {@link TerminalMultiplexer} so that
+ * many of them share one thread.
+ * @author Graham Edgecombe
+ */
+public final class TerminalPump implements Runnable, Closeable {
+
+	/**
+	 * The default buffer size in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+	/**
+	 * Creates a pump which copies the output of a process. The error stream
+	 * is not read, use {@link ProcessBuilder#redirectErrorStream(boolean)} to
+	 * merge it with the output.
+	 * @param process The process.
+	 * @param model The model.
+	 * @param listener The listener.
+	 * @return The pump.
+	 * @throws NullPointerException if any argument is {@code null}.
+	 */
+	public static TerminalPump forProcess(Process process, Vt100TerminalModel model, PumpListener listener) {
+		if (process == null) {
+			throw new NullPointerException("process");
+		}
+		return new TerminalPump(Channels.newChannel(process.getInputStream()), model, listener);
+	}
+
+	/**
+	 * The channel.
+	 */
+	private final ReadableByteChannel channel;
+
+	/**
+	 * The model.
+	 */
+	private final Vt100TerminalModel model;
+
+	/**
+	 * The listener.
+	 */
+	private final PumpListener listener;
+
+	/**
+	 * The size of the buffer used by {@link #run()}.
+	 */
+	private final int bufferSize;
+
+	/**
+	 * The number of bytes which have been printed. It is only written by the
+	 * thread running the pump.
+	 */
+	private volatile long bytesPrinted = 0;
+
+	/**
+	 * A flag indicating if the pump has been closed.
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	/**
+	 * Creates a pump with the default buffer size.
+	 * @param channel The channel.
+	 * @param model The model.
+	 * @param listener The listener.
+	 * @throws NullPointerException if any argument is {@code null}.
+	 */
+	public TerminalPump(ReadableByteChannel channel, Vt100TerminalModel model, PumpListener listener) {
+		this(channel, model, listener, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a pump.
+	 * @param channel The channel.
+	 * @param model The model.
+	 * @param listener The listener.
+	 * @param bufferSize The size of the buffer used by {@link #run()}, which is
+	 * the most output that is printed in a single batch.
+	 * @throws NullPointerException if any argument is {@code null}.
+	 * @throws IllegalArgumentException if the buffer size is not positive.
+	 */
+	public TerminalPump(ReadableByteChannel channel, Vt100TerminalModel model, PumpListener listener, int bufferSize) {
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		if (model == null) {
+			throw new NullPointerException("model");
+		}
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Positive values only allowed for buffer size.");
+		}
+		this.channel = channel;
+		this.model = model;
+		this.listener = listener;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Gets the channel.
+	 * @return The channel.
+	 */
+	public ReadableByteChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Gets the model.
+	 * @return The model.
+	 */
+	public Vt100TerminalModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Gets the number of bytes which have been printed to the model.
+	 * @return The number of bytes.
+	 */
+	public long getBytesPrinted() {
+		return bytesPrinted;
+	}
+
+	/**
+	 * Checks if the pump has been closed.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isClosed() {
+		return closed.get();
+	}
+
+	/**
+	 * Reads and prints output until the end of the stream is reached or the
+	 * pump is closed. This blocks if the channel is blocking.
+	 */
+	@Override
+	public void run() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+		try {
+			while (pump(buffer) >= 0);
+		} catch (AsynchronousCloseException ex) {
+			close(null);
+		} catch (IOException ex) {
+			close(ex);
+		}
+	}
+
+	/**
+	 * Reads a batch of output into a buffer and prints it. A non-blocking
+	 * channel is read until it has no more output or the buffer is full, a
+	 * blocking channel is read once.
+	 * @param buffer The buffer, whose contents are discarded.
+	 * @return The number of bytes printed, or {@code -1} if the end of the
+	 * stream was reached or the pump has been closed.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	int pump(ByteBuffer buffer) throws IOException {
+		if (closed.get()) {
+			return -1;
+		}
+
+		boolean blocking = !(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking();
+		boolean eof = false;
+		int total = 0;
+
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer);
+			if (read < 0) {
+				eof = true;
+				break;
+			}
+			total += read;
+			if (read == 0 || blocking) {
+				break;
+			}
+		}
+
+		if (total > 0) {
+			buffer.flip();
+			model.print(buffer);
+			bytesPrinted += total;
+			listener.printed(this);
+		}
+
+		if (eof) {
+			close(null);
+			return total > 0 ? total : -1;
+		}
+		return total;
+	}
+
+	/**
+	 * Closes the pump and its channel. The listener is notified if the pump
+	 * was not already closed.
+	 */
+	@Override
+	public void close() {
+		close(null);
+	}
+
+	/**
+	 * Closes the pump and its channel.
+	 * @param cause The exception which caused the pump to stop, or
+	 * {@code null} if it stopped normally.
+	 * @return {@code true} if the pump was closed by this call, {@code false}
+	 * if it had already been closed.
+	 */
+	boolean close(IOException cause) {
+		if (!closed.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			/* ignore, the pump is stopping anyway */
+		}
+		listener.closed(this, cause);
+		return true;
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A terminal owned by a {@link TerminalSessionHost}, consisting of a model and
+ * the pump which prints its input.
+ * @author Graham Edgecombe
+ */
+public final class TerminalSession implements Closeable {
+
+	/**
+	 * A {@link PumpListener} which records activity and forwards events to
+	 * the listener given when the session was opened.
+	 * @author Graham Edgecombe
+	 */
+	private final class SessionPumpListener implements PumpListener {
+
+		@Override
+		public void printed(TerminalPump pump) {
+			lastActivity = System.nanoTime();
+			listener.printed(pump);
+		}
+
+		@Override
+		public void closed(TerminalPump pump, IOException cause) {
+			host.closed(TerminalSession.this);
+			listener.closed(pump, cause);
+		}
+
+	}
+
+	/**
+	 * The host.
+	 */
+	private final TerminalSessionHost host;
+
+	/**
+	 * The session id.
+	 */
+	private final long id;
+
+	/**
+	 * The listener given when the session was opened.
+	 */
+	private final PumpListener listener;
+
+	/**
+	 * The pump.
+	 */
+	private final TerminalPump pump;
+
+	/**
+	 * A flag indicating if the session was closed because it was idle.
+	 */
+	private volatile boolean evicted = false;
+
+	/**
+	 * The value of {@link System#nanoTime()} when output was last printed, or
+	 * when the session was opened if nothing has been printed.
+	 */
+	private volatile long lastActivity = System.nanoTime();
+
+	/**
+	 * Creates a session.
+	 * @param host The host.
+	 * @param id The session id.
+	 * @param input The channel which the input of the terminal is read from.
+	 * @param model The model.
+	 * @param listener The listener.
+	 * @param bufferSize The pump's buffer size.
+	 */
+	TerminalSession(TerminalSessionHost host, long id, ReadableByteChannel input, Vt100TerminalModel model, PumpListener listener, int bufferSize) {
+		this.host = host;
+		this.id = id;
+		this.listener = listener;
+		this.pump = new TerminalPump(input, model, this.new SessionPumpListener(), bufferSize);
+	}
+
+	/**
+	 * Gets the session id, which is unique within the host.
+	 * @return The session id.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the model.
+	 * @return The model.
+	 */
+	public Vt100TerminalModel getModel() {
+		return pump.getModel();
+	}
+
+	/**
+	 * Gets the pump.
+	 * @return The pump.
+	 */
+	TerminalPump getPump() {
+		return pump;
+	}
+
+	/**
+	 * Gets the number of bytes which have been printed to the model.
+	 * @return The number of bytes.
+	 */
+	public long getBytesPrinted() {
+		return pump.getBytesPrinted();
+	}
+
+	/**
+	 * Gets the value of {@link System#nanoTime()} when output was last printed
+	 * to the model, or when the session was opened if nothing has been
+	 * printed yet.
+	 * @return The time of the last activity.
+	 */
+	public long getLastActivity() {
+		return lastActivity;
+	}
+
+	/**
+	 * Checks if the session has been closed.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isClosed() {
+		return pump.isClosed();
+	}
+
+	/**
+	 * Checks if the session was closed because it was idle.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * Closes the session because it was idle.
+	 * @return {@code true} if the session was closed by this call,
+	 * {@code false} if it had already been closed.
+	 */
+	boolean evict() {
+		evicted = true;
+		return pump.close(null);
+	}
+
+	/**
+	 * Closes the session and its input channel, removing it from the host.
+	 */
+	@Override
+	public void close() {
+		pump.close();
+	}
+
+}
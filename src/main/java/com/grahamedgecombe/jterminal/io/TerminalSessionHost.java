@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * Owns many headless terminals, such as those used to screen-scrape text
+ * applications on a server.
+ * <p>
+ * The input of each session is read by a {@link TerminalPump} which is run on
+ * an {@link Executor} given to the host. As a pump blocks while its channel is
+ * blocking, an executor which creates a cheap thread per task, such as the
+ * virtual thread executor available in newer versions of Java, lets a host
+ * run far more sessions than a pool of platform threads would. Sessions can
+ * optionally be closed once they have been idle for a while.
+ * @author Graham Edgecombe
+ */
+public final class TerminalSessionHost implements Closeable {
+
+	/**
+	 * A listener which ignores every event.
+	 */
+	private static final PumpListener NOP_LISTENER = new PumpListener() {
+		@Override
+		public void printed(TerminalPump pump) {
+			/* empty */
+		}
+
+		@Override
+		public void closed(TerminalPump pump, IOException cause) {
+			/* empty */
+		}
+	};
+
+	/**
+	 * The executor which runs the pumps.
+	 */
+	private final Executor executor;
+
+	/**
+	 * The idle timeout in nanoseconds, or {@code 0} if idle sessions are not
+	 * closed.
+	 */
+	private final long idleTimeout;
+
+	/**
+	 * The timer which closes idle sessions, or {@code null} if idle sessions
+	 * are not closed.
+	 */
+	private final Timer evictionTimer;
+
+	/**
+	 * The open sessions, keyed by id.
+	 */
+	private final ConcurrentMap<Long, TerminalSession> sessions = new ConcurrentHashMap<Long, TerminalSession>();
+
+	/**
+	 * The id of the next session.
+	 */
+	private final AtomicLong nextId = new AtomicLong(1);
+
+	/**
+	 * The number of sessions which have been opened.
+	 */
+	private final AtomicLong opened = new AtomicLong();
+
+	/**
+	 * The number of sessions which have been closed.
+	 */
+	private final AtomicLong closed = new AtomicLong();
+
+	/**
+	 * The number of sessions which have been closed because they were idle.
+	 */
+	private final AtomicLong evicted = new AtomicLong();
+
+	/**
+	 * The number of bytes printed by sessions which have been closed.
+	 */
+	private final AtomicLong closedBytes = new AtomicLong();
+
+	/**
+	 * A flag indicating if the host has been closed.
+	 */
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Creates a host which does not close idle sessions.
+	 * @param executor The executor which runs the pumps. The host does not shut
+	 * it down.
+	 * @throws NullPointerException if the executor is {@code null}.
+	 */
+	public TerminalSessionHost(Executor executor) {
+		this(executor, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a host.
+	 * @param executor The executor which runs the pumps. The host does not shut
+	 * it down.
+	 * @param idleTimeout The time after which a session which has not printed
+	 * anything is closed, or {@code 0} to never close idle sessions.
+	 * @param unit The unit of the idle timeout.
+	 * @throws NullPointerException if the executor or unit is {@code null}.
+	 * @throws IllegalArgumentException if the idle timeout is negative.
+	 */
+	public TerminalSessionHost(Executor executor, long idleTimeout, TimeUnit unit) {
+		if (executor == null) {
+			throw new NullPointerException("executor");
+		}
+		if (unit == null) {
+			throw new NullPointerException("unit");
+		}
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException("Zero or positive values only allowed for idle timeout.");
+		}
+		this.executor = executor;
+		this.idleTimeout = unit.toNanos(idleTimeout);
+		if (idleTimeout == 0) {
+			this.evictionTimer = null;
+		} else {
+			long period = Math.max(unit.toMillis(idleTimeout) / 2, 1);
+			this.evictionTimer = new Timer("TerminalSessionHost", true);
+			this.evictionTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					evictIdle();
+				}
+			}, period, period);
+		}
+	}
+
+	/**
+	 * Opens a session, which starts printing the input to the model
+	 * immediately.
+	 * @param input The channel which the input of the terminal is read from.
+	 * @param model The model.
+	 * @return The session.
+	 * @throws NullPointerException if any argument is {@code null}.
+	 * @throws IllegalStateException if the host has been closed.
+	 * @throws RejectedExecutionException if the executor rejected the pump.
+	 */
+	public TerminalSession open(ReadableByteChannel input, Vt100TerminalModel model) {
+		return open(input, model, NOP_LISTENER);
+	}
+
+	/**
+	 * Opens a session, which starts printing the input to the model
+	 * immediately.
+	 * @param input The channel which the input of the terminal is read from.
+	 * @param model The model.
+	 * @param listener A listener which is notified of the session's events.
+	 * @return The session.
+	 * @throws NullPointerException if any argument is {@code null}.
+	 * @throws IllegalStateException if the host has been closed.
+	 * @throws RejectedExecutionException if the executor rejected the pump.
+	 */
+	public TerminalSession open(ReadableByteChannel input, Vt100TerminalModel model, PumpListener listener) {
+		return open(input, model, listener, TerminalPump.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a session, which starts printing the input to the model
+	 * immediately.
+	 * @param input The channel which the input of the terminal is read from.
+	 * @param model The model.
+	 * @param listener A listener which is notified of the session's events.
+	 * @param bufferSize The size of the pump's buffer. A smaller buffer saves
+	 * memory when there are many sessions, at the cost of smaller batches.
+	 * @return The session.
+	 * @throws NullPointerException if any argument is {@code null}.
+	 * @throws IllegalArgumentException if the buffer size is not positive.
+	 * @throws IllegalStateException if the host has been closed.
+	 * @throws RejectedExecutionException if the executor rejected the pump.
+	 */
+	public TerminalSession open(ReadableByteChannel input, Vt100TerminalModel model, PumpListener listener, int bufferSize) {
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+		if (shutdown) {
+			throw new IllegalStateException("closed");
+		}
+
+		TerminalSession session = new TerminalSession(this, nextId.getAndIncrement(), input, model, listener, bufferSize);
+		sessions.put(session.getId(), session);
+		opened.incrementAndGet();
+		try {
+			executor.execute(session.getPump());
+		} catch (RejectedExecutionException ex) {
+			session.close();
+			throw ex;
+		}
+
+		/* close() may have missed the session if it ran while it was opened */
+		if (shutdown) {
+			session.close();
+		}
+		return session;
+	}
+
+	/**
+	 * Gets an open session.
+	 * @param id The session id.
+	 * @return The session, or {@code null} if there is no open session with
+	 * that id.
+	 */
+	public TerminalSession getSession(long id) {
+		return sessions.get(id);
+	}
+
+	/**
+	 * Gets the open sessions.
+	 * @return A copy of the collection of open sessions.
+	 */
+	public Collection<TerminalSession> getSessions() {
+		return new ArrayList<TerminalSession>(sessions.values());
+	}
+
+	/**
+	 * Gets the number of open sessions.
+	 * @return The number of open sessions.
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Gets the number of sessions which have been opened.
+	 * @return The number of sessions.
+	 */
+	public long getOpenedCount() {
+		return opened.get();
+	}
+
+	/**
+	 * Gets the number of sessions which have been closed, for any reason.
+	 * @return The number of sessions.
+	 */
+	public long getClosedCount() {
+		return closed.get();
+	}
+
+	/**
+	 * Gets the number of sessions which have been closed because they were
+	 * idle.
+	 * @return The number of sessions.
+	 */
+	public long getEvictedCount() {
+		return evicted.get();
+	}
+
+	/**
+	 * Gets the total number of bytes printed by every session, open or
+	 * closed.
+	 * @return The number of bytes.
+	 */
+	public long getBytesPrinted() {
+		long bytes = closedBytes.get();
+		for (TerminalSession session : sessions.values()) {
+			bytes += session.getBytesPrinted();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Closes every session which has not printed anything for longer than the
+	 * idle timeout. This is called periodically if the host was created with
+	 * an idle timeout.
+	 * @return The number of sessions which were closed.
+	 */
+	public int evictIdle() {
+		if (idleTimeout == 0) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		int count = 0;
+		for (TerminalSession session : sessions.values()) {
+			if (now - session.getLastActivity() > idleTimeout && session.evict()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Closes the host and every open session. The executor is not shut down.
+	 */
+	@Override
+	public void close() {
+		shutdown = true;
+		if (evictionTimer != null) {
+			evictionTimer.cancel();
+		}
+		for (TerminalSession session : sessions.values()) {
+			session.close();
+		}
+	}
+
+	/**
+	 * Called by a session when it has been closed.
+	 * @param session The session.
+	 */
+	void closed(TerminalSession session) {
+		if (sessions.remove(session.getId()) != null) {
+			if (session.isEvicted()) {
+				evicted.incrementAndGet();
+			}
+			closed.incrementAndGet();
+			closedBytes.addAndGet(session.getBytesPrinted());
+		}
+	}
+
+}
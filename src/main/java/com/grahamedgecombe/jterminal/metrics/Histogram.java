@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of durations. Durations are counted in buckets
+ * whose bounds are powers of two nanoseconds, so percentiles are accurate to
+ * within a factor of two.
+ * @author Graham Edgecombe
+ */
+public final class Histogram {
+
+	/**
+	 * The number of buckets. Bucket {@code i} counts durations of less than
+	 * {@code 2^i} nanoseconds which did not fit in an earlier bucket.
+	 */
+	public static final int BUCKETS = 64;
+
+	/**
+	 * The number of durations in each bucket.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * The number of durations.
+	 */
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * The sum of the durations.
+	 */
+	private final AtomicLong total = new AtomicLong();
+
+	/**
+	 * The longest duration.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a duration.
+	 * @param duration The duration in nanoseconds. Negative durations are
+	 * treated as zero.
+	 */
+	public void record(long duration) {
+		if (duration < 0) {
+			duration = 0;
+		}
+		buckets.incrementAndGet(bucket(duration));
+		count.incrementAndGet();
+		total.addAndGet(duration);
+
+		long current;
+		while (duration > (current = max.get())) {
+			if (max.compareAndSet(current, duration)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Gets the bucket which a duration falls into.
+	 * @param duration The duration in nanoseconds.
+	 * @return The bucket.
+	 */
+	private static int bucket(long duration) {
+		return Math.min(64 - Long.numberOfLeadingZeros(duration), BUCKETS - 1);
+	}
+
+	/**
+	 * Gets the number of durations which have been recorded.
+	 * @return The number of durations.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the number of durations in a bucket.
+	 * @param bucket The bucket.
+	 * @return The number of durations.
+	 * @throws IndexOutOfBoundsException if the bucket is out of range.
+	 */
+	public long getBucketCount(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * Gets the sum of the durations.
+	 * @param unit The unit to return the sum in.
+	 * @return The sum.
+	 */
+	public long getTotal(TimeUnit unit) {
+		return unit.convert(total.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the mean duration.
+	 * @param unit The unit to return the mean in.
+	 * @return The mean, or {@code 0} if no durations have been recorded.
+	 */
+	public long getMean(TimeUnit unit) {
+		long n = count.get();
+		return n == 0 ? 0 : unit.convert(total.get() / n, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the longest duration.
+	 * @param unit The unit to return the duration in.
+	 * @return The longest duration, or {@code 0} if no durations have been
+	 * recorded.
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets an upper bound for a percentile of the durations.
+	 * @param percentile The percentile, between {@code 0} and {@code 100}.
+	 * @param unit The unit to return the duration in.
+	 * @return The exclusive upper bound of the bucket which contains the
+	 * percentile, capped at the longest duration, or {@code 0} if no
+	 * durations have been recorded.
+	 * @throws IllegalArgumentException if the percentile is out of range.
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = Math.max((long) Math.ceil(n * percentile / 100), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				long bound = i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+				return unit.convert(Math.min(bound, max.get()), TimeUnit.NANOSECONDS);
+			}
+		}
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.metrics;
+
+/**
+ * Receives measurements from a
+ * {@link com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel} and a
+ * {@link com.grahamedgecombe.jterminal.JTerminal}. The model calls the sink
+ * while it holds its lock and the terminal calls it on the event dispatch
+ * thread, so implementations must be thread-safe and should return quickly.
+ * @author Graham Edgecombe
+ */
+public interface MetricsSink {
+
+	/**
+	 * Called when bytes have been printed to the model, before they are
+	 * decoded.
+	 * @param count The number of bytes.
+	 */
+	public void bytesPrinted(int count);
+
+	/**
+	 * Called when characters have been printed to the model, either directly
+	 * or after being decoded from bytes.
+	 * @param count The number of characters.
+	 */
+	public void charactersPrinted(int count);
+
+	/**
+	 * Called when a control sequence has been dispatched to the model.
+	 * @param command The command character.
+	 */
+	public void controlSequenceDispatched(char command);
+
+	/**
+	 * Called when the model has scrolled its buffer up by one row.
+	 */
+	public void scrolled();
+
+	/**
+	 * Called when the model has written text into cells.
+	 * @param count The number of cells.
+	 */
+	public void cellsWritten(int count);
+
+	/**
+	 * Called when the terminal has been painted.
+	 * @param duration The time taken to paint, in nanoseconds.
+	 */
+	public void painted(long duration);
+
+	/**
+	 * Called when the terminal has been painted after the model changed.
+	 * @param latency The time between the first change since the previous
+	 * paint being reported to the terminal and the end of this paint, in
+	 * nanoseconds.
+	 */
+	public void inputPainted(long latency);
+
+}
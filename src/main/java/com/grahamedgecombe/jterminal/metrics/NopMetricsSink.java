@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.metrics;
+
+/**
+ * A {@link MetricsSink} which does nothing. This is the default sink, so that
+ * metrics cost next to nothing unless they are enabled.
+ * @author Graham Edgecombe
+ */
+public class NopMetricsSink implements MetricsSink {
+
+	@Override
+	public void bytesPrinted(int count) {
+		/* ignore */
+	}
+
+	@Override
+	public void charactersPrinted(int count) {
+		/* ignore */
+	}
+
+	@Override
+	public void controlSequenceDispatched(char command) {
+		/* ignore */
+	}
+
+	@Override
+	public void scrolled() {
+		/* ignore */
+	}
+
+	@Override
+	public void cellsWritten(int count) {
+		/* ignore */
+	}
+
+	@Override
+	public void painted(long duration) {
+		/* ignore */
+	}
+
+	@Override
+	public void inputPainted(long latency) {
+		/* ignore */
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link MetricsSink} which keeps running totals of everything it is told
+ * about. The same instance may be given to a model and to the terminal which
+ * displays it, and read from any thread.
+ * @author Graham Edgecombe
+ */
+public final class TerminalMetrics implements MetricsSink {
+
+	/**
+	 * The number of control sequence command characters which are counted
+	 * separately. Commands are always in the range {@code 0x40-0x7E}.
+	 */
+	private static final int COMMANDS = 128;
+
+	/**
+	 * The number of bytes printed.
+	 */
+	private final AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * The number of characters printed.
+	 */
+	private final AtomicLong characters = new AtomicLong();
+
+	/**
+	 * The number of control sequences dispatched, indexed by command
+	 * character.
+	 */
+	private final AtomicLongArray sequences = new AtomicLongArray(COMMANDS);
+
+	/**
+	 * The number of rows scrolled.
+	 */
+	private final AtomicLong scrolls = new AtomicLong();
+
+	/**
+	 * The number of cells written.
+	 */
+	private final AtomicLong cells = new AtomicLong();
+
+	/**
+	 * The histogram of paint durations.
+	 */
+	private final Histogram paintTimes = new Histogram();
+
+	/**
+	 * The histogram of input to paint latencies.
+	 */
+	private final Histogram inputLatencies = new Histogram();
+
+	@Override
+	public void bytesPrinted(int count) {
+		bytes.addAndGet(count);
+	}
+
+	@Override
+	public void charactersPrinted(int count) {
+		characters.addAndGet(count);
+	}
+
+	@Override
+	public void controlSequenceDispatched(char command) {
+		sequences.incrementAndGet(command & (COMMANDS - 1));
+	}
+
+	@Override
+	public void scrolled() {
+		scrolls.incrementAndGet();
+	}
+
+	@Override
+	public void cellsWritten(int count) {
+		cells.addAndGet(count);
+	}
+
+	@Override
+	public void painted(long duration) {
+		paintTimes.record(duration);
+	}
+
+	@Override
+	public void inputPainted(long latency) {
+		inputLatencies.record(latency);
+	}
+
+	/**
+	 * Gets the number of bytes printed.
+	 * @return The number of bytes.
+	 */
+	public long getBytesPrinted() {
+		return bytes.get();
+	}
+
+	/**
+	 * Gets the number of characters printed, including those decoded from
+	 * bytes.
+	 * @return The number of characters.
+	 */
+	public long getCharactersPrinted() {
+		return characters.get();
+	}
+
+	/**
+	 * Gets the number of control sequences dispatched with a command
+	 * character.
+	 * @param command The command character.
+	 * @return The number of control sequences.
+	 */
+	public long getControlSequences(char command) {
+		return command < COMMANDS ? sequences.get(command) : 0;
+	}
+
+	/**
+	 * Gets the total number of control sequences dispatched.
+	 * @return The number of control sequences.
+	 */
+	public long getControlSequences() {
+		long total = 0;
+		for (int i = 0; i < COMMANDS; i++) {
+			total += sequences.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the number of rows scrolled.
+	 * @return The number of rows.
+	 */
+	public long getScrolls() {
+		return scrolls.get();
+	}
+
+	/**
+	 * Gets the number of cells written.
+	 * @return The number of cells.
+	 */
+	public long getCellsWritten() {
+		return cells.get();
+	}
+
+	/**
+	 * Gets the number of times the terminal has been painted.
+	 * @return The number of paints.
+	 */
+	public long getPaintCount() {
+		return paintTimes.getCount();
+	}
+
+	/**
+	 * Gets the histogram of paint durations.
+	 * @return The histogram.
+	 */
+	public Histogram getPaintTimes() {
+		return paintTimes;
+	}
+
+	/**
+	 * Gets the histogram of latencies between the model changing and the
+	 * change being painted.
+	 * @return The histogram.
+	 */
+	public Histogram getInputLatencies() {
+		return inputLatencies;
+	}
+
+}
@@ -23,38 +23,117 @@
 package com.grahamedgecombe.jterminal.vt100;
 
 /**
- * Represents an ANSI control sequence.
+ * Represents an ANSI control sequence. To avoid allocating an object for every
+ * sequence, a {@link AnsiControlSequenceParser} reuses a single instance, so
+ * listeners must not keep a reference to it after
+ * {@link AnsiControlSequenceListener#parsedControlSequence(AnsiControlSequence)}
+ * returns. Use {@link #copy()} if a sequence needs to be kept.
  * @author Graham Edgecombe
  */
 class AnsiControlSequence {
 
+	/**
+	 * The maximum number of parameters. Any further parameters are ignored.
+	 */
+	public static final int MAX_PARAMETERS = 32;
+
+	/**
+	 * The largest value a parameter can have. Larger values are clamped.
+	 */
+	public static final int MAX_PARAMETER_VALUE = 65535;
+
+	/**
+	 * The value used for a parameter which was omitted.
+	 */
+	private static final int DEFAULT = -1;
+
 	/**
 	 * The command character.
 	 */
-	private final char command;
+	private char command;
+
+	/**
+	 * The private marker character, or {@code 0} if there is none.
+	 */
+	private char privateMarker;
+
+	/**
+	 * The intermediate characters, packed into an integer with one character
+	 * per byte and the last character in the lowest byte, or {@code 0} if
+	 * there are none.
+	 */
+	private int intermediates;
 
 	/**
 	 * The parameters.
 	 */
-	private final String[] parameters;
+	private final int[] parameters;
 
 	/**
-	 * Creates an ANSI control sequence with the specified command and
-	 * parameters.
-	 * @param command The command character.
-	 * @param parameters The parameters array.
-	 * @throws NullPointerException if the parameters array is {@code null}.
+	 * The number of parameters.
+	 */
+	private int parameterCount;
+
+	/**
+	 * Creates an empty ANSI control sequence.
+	 */
+	public AnsiControlSequence() {
+		this.parameters = new int[MAX_PARAMETERS];
+	}
+
+	/**
+	 * Resets the sequence so that it has no parameters, private marker or
+	 * intermediate characters.
 	 */
-	public AnsiControlSequence(char command, String[] parameters) {
-		if (parameters == null) {
-			throw new NullPointerException("parameters");
+	void clear() {
+		command = 0;
+		privateMarker = 0;
+		intermediates = 0;
+		parameterCount = 0;
+	}
+
+	/**
+	 * Adds a private marker or intermediate character. A character in the
+	 * range {@code 0x3C-0x3F} is the private marker, anything else is an
+	 * intermediate character.
+	 * @param character The character.
+	 */
+	void collect(char character) {
+		if (character >= 0x3C && character <= 0x3F) {
+			privateMarker = character;
+		} else if ((intermediates & 0xFF00) == 0) {
+			intermediates = (intermediates << 8) | character;
 		}
-		this.command = command;
-		if (parameters.length == 1 && parameters[0].equals("")) {
-			this.parameters = new String[0];
-		} else {
-			this.parameters = parameters.clone();
+	}
+
+	/**
+	 * Adds a parameter character, which is either a digit or a semicolon.
+	 * @param character The character.
+	 */
+	void addParameterCharacter(char character) {
+		if (parameterCount == 0) {
+			parameters[0] = DEFAULT;
+			parameterCount = 1;
+		}
+		if (character == ';') {
+			if (parameterCount < MAX_PARAMETERS) {
+				parameters[parameterCount++] = DEFAULT;
+			}
+			return;
 		}
+
+		int index = parameterCount - 1;
+		int value = parameters[index];
+		value = (value == DEFAULT ? 0 : value * 10) + (character - '0');
+		parameters[index] = value > MAX_PARAMETER_VALUE ? MAX_PARAMETER_VALUE : value;
+	}
+
+	/**
+	 * Sets the command character.
+	 * @param command The command character.
+	 */
+	void setCommand(char command) {
+		this.command = command;
 	}
 
 	/**
@@ -66,12 +145,56 @@ class AnsiControlSequence {
 	}
 
 	/**
-	 * Gets the parameters array.
-	 * @return The parameters array.
+	 * Gets the private marker character, which is one of {@code <=>?}.
+	 * @return The private marker character, or {@code 0} if there is none.
 	 */
-	public String[] getParameters() {
-		return parameters;
+	public char getPrivateMarker() {
+		return privateMarker;
 	}
 
-}
+	/**
+	 * Gets the intermediate characters, packed into an integer.
+	 * @return The intermediate characters, or {@code 0} if there are none.
+	 */
+	public int getIntermediates() {
+		return intermediates;
+	}
 
+	/**
+	 * Gets the number of parameters, including any which were omitted.
+	 * @return The number of parameters.
+	 */
+	public int getParameterCount() {
+		return parameterCount;
+	}
+
+	/**
+	 * Gets a parameter.
+	 * @param index The index of the parameter.
+	 * @param defaultValue The value to return if the parameter was omitted or
+	 * the index is out of range.
+	 * @return The parameter.
+	 */
+	public int getParameter(int index, int defaultValue) {
+		if (index < 0 || index >= parameterCount) {
+			return defaultValue;
+		}
+		int value = parameters[index];
+		return value == DEFAULT ? defaultValue : value;
+	}
+
+	/**
+	 * Creates a copy of this sequence which is safe to keep.
+	 * @return The copy.
+	 */
+	public AnsiControlSequence copy() {
+		AnsiControlSequence seq = new AnsiControlSequence();
+		seq.command = command;
+		seq.privateMarker = privateMarker;
+		seq.intermediates = intermediates;
+		seq.parameterCount = parameterCount;
+		System.arraycopy(parameters, 0, seq.parameters, 0, parameterCount);
+		return seq;
+	}
+
+}
@@ -35,10 +35,20 @@ interface AnsiControlSequenceListener {
 	public void parsedControlSequence(AnsiControlSequence seq);
 
 	/**
-	 * Called when a string has been parsed.
-	 * @param str The string.
+	 * Called when a run of printable characters has been parsed. The run does
+	 * not contain any control characters.
+	 * @param text An array which contains the characters. It must not be
+	 * modified or kept after this method returns.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
 	 */
-	public void parsedString(String str);
+	public void parsedText(char[] text, int offset, int length);
+
+	/**
+	 * Called when a control character has been parsed.
+	 * @param character The control character.
+	 */
+	public void parsedControlCharacter(char character);
 
 }
 
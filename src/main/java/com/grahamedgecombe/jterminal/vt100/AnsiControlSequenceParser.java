@@ -22,31 +22,257 @@
 
 package com.grahamedgecombe.jterminal.vt100;
 
-import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
-
 /**
  * A class which parses {@link AnsiControlSequence}s from {@link String}(s).
+ * <p>
+ * The parser is a table-driven state machine modelled on the DEC VT500 series
+ * parser. Any state is kept between calls to {@link #parse(String)}, so a
+ * sequence may be split across several strings. Numeric parameters are parsed
+ * directly into a single reused {@link AnsiControlSequence}, so parsing a
+ * sequence does not allocate any objects. Escape sequences other than control
+ * sequences, operating system commands and device control strings are
+ * recognised so that they are not printed, but are otherwise ignored.
+ * <p>
+ * Printable text is not copied: the parser scans ahead for the longest run of
+ * printable characters and passes the range to the listener in one call.
  * @author Graham Edgecombe
  */
 class AnsiControlSequenceParser {
 
 	/**
-	 * The multi-byte control sequence introducer.
+	 * The ground state, in which characters are printed.
+	 */
+	private static final int GROUND = 0;
+
+	/**
+	 * The state after an escape character.
+	 */
+	private static final int ESCAPE = 1;
+
+	/**
+	 * The state after an escape character and an intermediate character.
+	 */
+	private static final int ESCAPE_INTERMEDIATE = 2;
+
+	/**
+	 * The state after a control sequence introducer.
+	 */
+	private static final int CSI_ENTRY = 3;
+
+	/**
+	 * The state while reading the parameters of a control sequence.
+	 */
+	private static final int CSI_PARAM = 4;
+
+	/**
+	 * The state while reading the intermediate characters of a control
+	 * sequence.
+	 */
+	private static final int CSI_INTERMEDIATE = 5;
+
+	/**
+	 * The state while skipping a malformed control sequence.
 	 */
-	private static final char[] MULTI_CSI = new char[] { 27, '[' };
+	private static final int CSI_IGNORE = 6;
 
 	/**
-	 * The single-byte control sequence introducer.
+	 * The state after a device control string introducer.
 	 */
-	private static final char SINGLE_CSI = 155;
+	private static final int DCS_ENTRY = 7;
 
 	/**
-	 * The buffer of data from the last call to {@link #parse()}. This is
-	 * populated with data if an escape sequence is not complete.
+	 * The state while reading the parameters of a device control string.
 	 */
-	private StringBuilder buffer = new StringBuilder();
+	private static final int DCS_PARAM = 8;
+
+	/**
+	 * The state while reading the intermediate characters of a device control
+	 * string.
+	 */
+	private static final int DCS_INTERMEDIATE = 9;
+
+	/**
+	 * The state while reading the data of a device control string.
+	 */
+	private static final int DCS_PASSTHROUGH = 10;
+
+	/**
+	 * The state while skipping a malformed device control string.
+	 */
+	private static final int DCS_IGNORE = 11;
+
+	/**
+	 * The state while reading an operating system command.
+	 */
+	private static final int OSC_STRING = 12;
+
+	/**
+	 * The state while skipping a start of string, privacy message or
+	 * application program command.
+	 */
+	private static final int SOS_PM_APC_STRING = 13;
+
+	/**
+	 * The number of states.
+	 */
+	private static final int STATES = 14;
+
+	/**
+	 * The action which does nothing.
+	 */
+	private static final int IGNORE = 0;
+
+	/**
+	 * The action which prints a character.
+	 */
+	private static final int PRINT = 1;
+
+	/**
+	 * The action which executes a control character.
+	 */
+	private static final int EXECUTE = 2;
+
+	/**
+	 * The action which collects a private marker or intermediate character.
+	 */
+	private static final int COLLECT = 3;
+
+	/**
+	 * The action which adds a parameter character.
+	 */
+	private static final int PARAM = 4;
+
+	/**
+	 * The action which dispatches a control sequence.
+	 */
+	private static final int CSI_DISPATCH = 5;
+
+	/**
+	 * The character class which all characters from {@code 0xA0} onwards
+	 * belong to.
+	 */
+	private static final int GRAPHIC = 0xA0;
+
+	/**
+	 * The number of character classes.
+	 */
+	private static final int CLASSES = GRAPHIC + 1;
+
+	/**
+	 * The transition table, indexed by state and then character class. Each
+	 * entry contains the action in the upper four bits and the next state in
+	 * the lower four bits.
+	 */
+	private static final byte[] TRANSITIONS = new byte[STATES * CLASSES];
+
+	static {
+		for (int state = 0; state < STATES; state++) {
+			transition(state, 0x00, GRAPHIC, IGNORE, state);
+		}
+
+		transition(GROUND, 0x00, 0x1F, EXECUTE, GROUND);
+		transition(GROUND, 0x20, 0x7E, PRINT, GROUND);
+		transition(GROUND, 0x7F, 0x7F, EXECUTE, GROUND);
+		transition(GROUND, GRAPHIC, GRAPHIC, PRINT, GROUND);
+
+		transition(ESCAPE, 0x00, 0x1F, EXECUTE, ESCAPE);
+		transition(ESCAPE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+		transition(ESCAPE, 0x30, 0x7E, IGNORE, GROUND);
+		transition(ESCAPE, 'P', 'P', IGNORE, DCS_ENTRY);
+		transition(ESCAPE, 'X', 'X', IGNORE, SOS_PM_APC_STRING);
+		transition(ESCAPE, '[', '[', IGNORE, CSI_ENTRY);
+		transition(ESCAPE, ']', ']', IGNORE, OSC_STRING);
+		transition(ESCAPE, '^', '_', IGNORE, SOS_PM_APC_STRING);
+
+		transition(ESCAPE_INTERMEDIATE, 0x00, 0x1F, EXECUTE, ESCAPE_INTERMEDIATE);
+		transition(ESCAPE_INTERMEDIATE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+		transition(ESCAPE_INTERMEDIATE, 0x30, 0x7E, IGNORE, GROUND);
+
+		transition(CSI_ENTRY, 0x00, 0x1F, EXECUTE, CSI_ENTRY);
+		transition(CSI_ENTRY, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+		transition(CSI_ENTRY, 0x30, 0x39, PARAM, CSI_PARAM);
+		transition(CSI_ENTRY, 0x3A, 0x3A, IGNORE, CSI_IGNORE);
+		transition(CSI_ENTRY, 0x3B, 0x3B, PARAM, CSI_PARAM);
+		transition(CSI_ENTRY, 0x3C, 0x3F, COLLECT, CSI_PARAM);
+		transition(CSI_ENTRY, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+		transition(CSI_PARAM, 0x00, 0x1F, EXECUTE, CSI_PARAM);
+		transition(CSI_PARAM, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+		transition(CSI_PARAM, 0x30, 0x39, PARAM, CSI_PARAM);
+		transition(CSI_PARAM, 0x3A, 0x3A, IGNORE, CSI_IGNORE);
+		transition(CSI_PARAM, 0x3B, 0x3B, PARAM, CSI_PARAM);
+		transition(CSI_PARAM, 0x3C, 0x3F, IGNORE, CSI_IGNORE);
+		transition(CSI_PARAM, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+		transition(CSI_INTERMEDIATE, 0x00, 0x1F, EXECUTE, CSI_INTERMEDIATE);
+		transition(CSI_INTERMEDIATE, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+		transition(CSI_INTERMEDIATE, 0x30, 0x3F, IGNORE, CSI_IGNORE);
+		transition(CSI_INTERMEDIATE, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+		transition(CSI_IGNORE, 0x00, 0x1F, EXECUTE, CSI_IGNORE);
+		transition(CSI_IGNORE, 0x40, 0x7E, IGNORE, GROUND);
+
+		transition(DCS_ENTRY, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+		transition(DCS_ENTRY, 0x30, 0x39, PARAM, DCS_PARAM);
+		transition(DCS_ENTRY, 0x3A, 0x3A, IGNORE, DCS_IGNORE);
+		transition(DCS_ENTRY, 0x3B, 0x3B, PARAM, DCS_PARAM);
+		transition(DCS_ENTRY, 0x3C, 0x3F, COLLECT, DCS_PARAM);
+		transition(DCS_ENTRY, 0x40, 0x7E, IGNORE, DCS_PASSTHROUGH);
+
+		transition(DCS_PARAM, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+		transition(DCS_PARAM, 0x30, 0x39, PARAM, DCS_PARAM);
+		transition(DCS_PARAM, 0x3A, 0x3A, IGNORE, DCS_IGNORE);
+		transition(DCS_PARAM, 0x3B, 0x3B, PARAM, DCS_PARAM);
+		transition(DCS_PARAM, 0x3C, 0x3F, IGNORE, DCS_IGNORE);
+		transition(DCS_PARAM, 0x40, 0x7E, IGNORE, DCS_PASSTHROUGH);
+
+		transition(DCS_INTERMEDIATE, 0x20, 0x2F, COLLECT, DCS_INTERMEDIATE);
+		transition(DCS_INTERMEDIATE, 0x30, 0x3F, IGNORE, DCS_IGNORE);
+		transition(DCS_INTERMEDIATE, 0x40, 0x7E, IGNORE, DCS_PASSTHROUGH);
+
+		/* xterm also allows an operating system command to end with BEL */
+		transition(OSC_STRING, 0x07, 0x07, IGNORE, GROUND);
+
+		/* these transitions apply in every state */
+		for (int state = 0; state < STATES; state++) {
+			transition(state, 0x18, 0x18, EXECUTE, GROUND);
+			transition(state, 0x1A, 0x1A, EXECUTE, GROUND);
+			transition(state, 0x1B, 0x1B, IGNORE, ESCAPE);
+			transition(state, 0x80, 0x8F, EXECUTE, GROUND);
+			transition(state, 0x90, 0x90, IGNORE, DCS_ENTRY);
+			transition(state, 0x91, 0x97, EXECUTE, GROUND);
+			transition(state, 0x98, 0x98, IGNORE, SOS_PM_APC_STRING);
+			transition(state, 0x99, 0x9A, EXECUTE, GROUND);
+			transition(state, 0x9B, 0x9B, IGNORE, CSI_ENTRY);
+			transition(state, 0x9C, 0x9C, IGNORE, GROUND);
+			transition(state, 0x9D, 0x9D, IGNORE, OSC_STRING);
+			transition(state, 0x9E, 0x9F, IGNORE, SOS_PM_APC_STRING);
+		}
+	}
+
+	/**
+	 * Sets the transitions for a range of character classes in a state.
+	 * @param state The state.
+	 * @param first The first character class (inclusive).
+	 * @param last The last character class (inclusive).
+	 * @param action The action.
+	 * @param next The next state.
+	 */
+	private static void transition(int state, int first, int last, int action, int next) {
+		for (int character = first; character <= last; character++) {
+			TRANSITIONS[state * CLASSES + character] = (byte) ((action << 4) | next);
+		}
+	}
+
+	/**
+	 * The current state.
+	 */
+	private int state = GROUND;
+
+	/**
+	 * The control sequence which is being parsed.
+	 */
+	private final AnsiControlSequence seq = new AnsiControlSequence();
 
 	/**
 	 * The ANSI control sequence listener.
@@ -61,96 +287,86 @@ class AnsiControlSequenceParser {
 		this.listener = listener;
 	}
 
+	/**
+	 * Checks if the parser is in the ground state, that is, it is not part way
+	 * through a sequence.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isGround() {
+		return state == GROUND;
+	}
+
 	/**
 	 * Parses the specified string.
 	 * @param str The string to parse.
 	 */
 	public void parse(String str) {
-		if (buffer.length() > 0) {
-			str = buffer.toString().concat(str);
-			buffer = new StringBuilder();
-		}
-		Reader reader = new StringReader(str);
-		try {
-			try {
-				parse(reader);
-			} finally {
-				reader.close();
-			}
-		} catch (IOException ex) {
-			/* ignore */
-		}
+		char[] text = str.toCharArray();
+		parse(text, 0, text.length);
 	}
 
 	/**
-	 * Parses characters from the specified character reader.
-	 * @param reader The character reader.
-	 * @throws IOException if an I/O error occurs.
-	 */
-	private void parse(Reader reader) throws IOException {
-		StringBuilder text = new StringBuilder();
-		int character;
-		while ((character = reader.read()) != -1) {
-			boolean introducedControlSequence = false;
-			if (character == SINGLE_CSI) {
-				introducedControlSequence = true;
-			} else if (character == MULTI_CSI[0]) {
-				int nextCharacter = reader.read();
-				if (nextCharacter == -1) {
-					buffer.append((char) character);
-					break;
-				} else if (nextCharacter == MULTI_CSI[1]) {
-					introducedControlSequence = true;
-				} else {
-					text.append((char) character);
-					text.append((char) nextCharacter);
+	 * Parses a range of characters. The listener may be passed a range of the
+	 * array, which is only valid until the listener returns.
+	 * @param text The array which contains the characters.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 */
+	public void parse(char[] text, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		while (i < end) {
+			if (state == GROUND) {
+				int start = i;
+				while (i < end && isPrintable(text[i])) {
+					i++;
+				}
+				if (i > start) {
+					listener.parsedText(text, start, i - start);
+					if (i == end) {
+						break;
+					}
 				}
-			} else {
-				text.append((char) character);
 			}
 
-			if (introducedControlSequence) {
-				if (text.length() > 0) {
-					listener.parsedString(text.toString());
-					text = new StringBuilder();
-				}
-				parseControlSequence(reader);
+			char character = text[i++];
+			int transition = TRANSITIONS[state * CLASSES + (character < GRAPHIC ? character : GRAPHIC)];
+			int action = transition >> 4;
+			int next = transition & 0xF;
+
+			switch (action) {
+			case PRINT:
+				listener.parsedText(text, i - 1, 1);
+				break;
+			case EXECUTE:
+				listener.parsedControlCharacter(character);
+				break;
+			case COLLECT:
+				seq.collect(character);
+				break;
+			case PARAM:
+				seq.addParameterCharacter(character);
+				break;
+			case CSI_DISPATCH:
+				seq.setCommand(character);
+				listener.parsedControlSequence(seq);
+				break;
 			}
-		}
 
-		if (text.length() > 0) {
-			listener.parsedString(text.toString());
+			if (next != state && (next == ESCAPE || next == CSI_ENTRY || next == DCS_ENTRY)) {
+				seq.clear();
+			}
+			state = next;
 		}
 	}
 
 	/**
-	 * Parses a control sequence.
-	 * @param reader The character reader.
-	 * @throws IOException if an I/O error occurs.
+	 * Checks if a character is printed when the parser is in the ground state.
+	 * @param character The character.
+	 * @return {@code true} if so, {@code false} if it is a control character.
 	 */
-	private void parseControlSequence(Reader reader) throws IOException {
-		boolean finishedSequence = false;
-		StringBuilder parameters = new StringBuilder();
-		int character;
-		while ((character = reader.read()) != -1) {
-			if ((character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z')) {
-				String[] array = parameters.toString().split(";");
-				AnsiControlSequence seq = new AnsiControlSequence((char) character, array);
-				listener.parsedControlSequence(seq);
-
-				finishedSequence = true;
-				break;
-			} else {
-				parameters.append((char) character);
-			}
-		}
-		if (!finishedSequence) {
-			// not an ideal solution if they used the two byte CSI, but it's
-			// easier and cleaner than keeping track of it
-			buffer.append((char) SINGLE_CSI);
-			buffer.append(parameters);
-		}
+	private static boolean isPrintable(char character) {
+		return (character >= 0x20 && character < 0x7F) || character >= GRAPHIC;
 	}
 
 }
-
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import com.grahamedgecombe.jterminal.TerminalCell;
+
+/**
+ * Stores the cells of a {@link Vt100TerminalModel}. Implementations do not
+ * check that the column and row numbers they are given are within bounds,
+ * that is the responsibility of the model.
+ * <p>
+ * Rows are kept in a circular buffer so that scrolling only has to empty a
+ * single row. Implementations must translate row numbers with
+ * {@link #slot(int)} before indexing their own storage. Scrolling part of the
+ * buffer swaps the rows' storage between slots with
+ * {@link #swapSlots(int, int)}, so no cells are copied.
+ * @author Graham Edgecombe
+ */
+abstract class CellBuffer {
+
+	/**
+	 * The number of columns.
+	 */
+	protected final int columns;
+
+	/**
+	 * The buffer size.
+	 */
+	protected final int bufferSize;
+
+	/**
+	 * The palette used to look up the colors of cells which were written with
+	 * {@link #write(int, int, char[], int, int, int, int, int)}.
+	 */
+	protected Palette palette = Palette.DEFAULT;
+
+	/**
+	 * The slot which contains the first row.
+	 */
+	private int top = 0;
+
+	/**
+	 * Creates the cell buffer.
+	 * @param columns The number of columns.
+	 * @param bufferSize The buffer size.
+	 */
+	public CellBuffer(int columns, int bufferSize) {
+		this.columns = columns;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Gets a cell.
+	 * @param column The column.
+	 * @param row The row.
+	 * @return The cell, or {@code null} if it is empty.
+	 */
+	public abstract TerminalCell get(int column, int row);
+
+	/**
+	 * Copies the cells in a row into an array.
+	 * @param row The row.
+	 * @param destination The array, which must have room for every column.
+	 */
+	public abstract void read(int row, TerminalCell[] destination);
+
+	/**
+	 * Sets a cell.
+	 * @param column The column.
+	 * @param row The row.
+	 * @param cell The cell, or {@code null} to empty it.
+	 */
+	public abstract void set(int column, int row, TerminalCell cell);
+
+	/**
+	 * Writes a run of characters to consecutive cells within a row.
+	 * @param column The first column.
+	 * @param row The row.
+	 * @param text The array which contains the characters.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters, which must fit within the row.
+	 * @param backgroundColor The background color code, as accepted by
+	 * {@link SgrColor#getColor(int, Palette)}.
+	 * @param foregroundColor The foreground color code, as accepted by
+	 * {@link SgrColor#getColor(int, Palette)}.
+	 * @param attributes The attribute flags, as accepted by
+	 * {@link TerminalCell#getAttributes()}.
+	 */
+	public abstract void write(int column, int row, char[] text, int offset, int length, int backgroundColor, int foregroundColor, int attributes);
+
+	/**
+	 * Changes the palette. Cells which were written with palette colors take
+	 * on the colors of the new palette.
+	 * @param palette The new palette.
+	 */
+	public void setPalette(Palette palette) {
+		this.palette = palette;
+	}
+
+	/**
+	 * Empties a range of cells within a row.
+	 * @param row The row.
+	 * @param startColumn The first column to empty (inclusive).
+	 * @param endColumn The last column to empty (exclusive).
+	 */
+	public abstract void erase(int row, int startColumn, int endColumn);
+
+	/**
+	 * Sets a range of cells within a row to the same cell.
+	 * @param row The row.
+	 * @param startColumn The first column to set (inclusive).
+	 * @param endColumn The last column to set (exclusive).
+	 * @param cell The cell, or {@code null} to empty the range.
+	 */
+	public abstract void fill(int row, int startColumn, int endColumn, TerminalCell cell);
+
+	/**
+	 * Copies a run of cells from one row to another. The source and
+	 * destination may be in the same row and overlap.
+	 * @param row The source row.
+	 * @param column The first column of the source.
+	 * @param destinationRow The destination row.
+	 * @param destinationColumn The first column of the destination.
+	 * @param length The number of cells.
+	 */
+	public abstract void copy(int row, int column, int destinationRow, int destinationColumn, int length);
+
+	/**
+	 * Scrolls the buffer up by one row, discarding the first row and leaving
+	 * the last row empty.
+	 */
+	public void scroll() {
+		clearSlot(top);
+		top = slot(1);
+	}
+
+	/**
+	 * Scrolls a range of rows up or down, emptying the rows which are exposed.
+	 * The rows are rotated in place by swapping their slots, so the cost is
+	 * proportional to the number of rows in the range plus the number of
+	 * cells emptied, rather than the number of cells in the range.
+	 * @param row The first row.
+	 * @param height The number of rows.
+	 * @param n The number of rows to scroll by: positive to move the rows up,
+	 * negative to move them down. Its magnitude must be less than the height.
+	 */
+	public void scroll(int row, int height, int n) {
+		if (n > 0 && row == 0 && height == bufferSize) {
+			for (int i = 0; i < n; i++) {
+				scroll();
+			}
+			return;
+		}
+
+		/* rotate with three reversals, which needs no temporary storage */
+		int split = n > 0 ? n : height + n;
+		reverse(row, row + split);
+		reverse(row + split, row + height);
+		reverse(row, row + height);
+
+		int first = n > 0 ? row + height - n : row;
+		for (int i = 0; i < Math.abs(n); i++) {
+			clearSlot(slot(first + i));
+		}
+	}
+
+	/**
+	 * Reverses the order of a range of rows.
+	 * @param start The first row (inclusive).
+	 * @param end The last row (exclusive).
+	 */
+	private void reverse(int start, int end) {
+		for (end--; start < end; start++, end--) {
+			swapSlots(slot(start), slot(end));
+		}
+	}
+
+	/**
+	 * Translates a row number into the slot in which the row is stored.
+	 * @param row The row.
+	 * @return The slot.
+	 */
+	protected final int slot(int row) {
+		int slot = top + row;
+		if (slot >= bufferSize) {
+			slot -= bufferSize;
+		}
+		return slot;
+	}
+
+	/**
+	 * Empties every cell in a slot.
+	 * @param slot The slot.
+	 */
+	protected abstract void clearSlot(int slot);
+
+	/**
+	 * Swaps the storage of two slots.
+	 * @param a The first slot.
+	 * @param b The second slot.
+	 */
+	protected abstract void swapSlots(int a, int b);
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+/**
+ * Selects how a {@link Vt100TerminalModel} stores its cells.
+ * @author Graham Edgecombe
+ */
+public enum CellStorage {
+
+	/**
+	 * Stores a {@link com.grahamedgecombe.jterminal.TerminalCell} object for
+	 * every cell which has been written to. Changing the palette takes time
+	 * proportional to the size of the buffer. This is the default.
+	 */
+	OBJECT {
+		@Override
+		CellBuffer createBuffer(int columns, int bufferSize) {
+			return new ObjectCellBuffer(columns, bufferSize);
+		}
+	},
+
+	/**
+	 * Packs every cell into primitive values, with one array per row.
+	 * {@link com.grahamedgecombe.jterminal.TerminalCell} objects are only
+	 * created when a cell is read. This uses considerably less memory than
+	 * {@link #OBJECT} for large buffers, does not allocate when printing and
+	 * lets the palette be changed without touching any cells.
+	 */
+	PACKED {
+		@Override
+		CellBuffer createBuffer(int columns, int bufferSize) {
+			return new PackedCellBuffer(columns, bufferSize);
+		}
+	};
+
+	/**
+	 * Creates a cell buffer which uses this type of storage.
+	 * @param columns The number of columns.
+	 * @param bufferSize The buffer size.
+	 * @return The cell buffer.
+	 */
+	abstract CellBuffer createBuffer(int columns, int bufferSize);
+
+}
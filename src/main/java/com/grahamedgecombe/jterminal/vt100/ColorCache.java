@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.awt.Color;
+
+/**
+ * A bounded cache of {@link Color} objects, keyed by their ARGB value, so
+ * that cells with the same 24-bit or 32-bit color share a single
+ * {@link Color} rather than each having their own.
+ * <p>
+ * The cache is direct-mapped: each RGB value can only be stored in one slot,
+ * and storing it evicts whatever color was there before. Lookups are
+ * therefore cheap and the cache never grows, at the cost of a miss if two
+ * colors in use map to the same slot. The cache may be used by several
+ * threads without locking, as {@link Color} is immutable and a lost update
+ * only causes a later miss.
+ * @author Graham Edgecombe
+ */
+final class ColorCache {
+
+	/**
+	 * The slots.
+	 */
+	private final Color[] colors;
+
+	/**
+	 * The mask used to turn a hash into a slot index.
+	 */
+	private final int mask;
+
+	/**
+	 * Creates a color cache.
+	 * @param size The number of slots, which must be a power of two.
+	 * @throws IllegalArgumentException if the size is not a positive power of
+	 * two.
+	 */
+	public ColorCache(int size) {
+		if (size <= 0 || (size & (size - 1)) != 0) {
+			throw new IllegalArgumentException("size must be a positive power of two");
+		}
+		this.colors = new Color[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Gets the color with the specified RGB value, creating it if it is not
+	 * in the cache.
+	 * @param rgb The RGB value, with red in bits 16-23, green in bits 8-15
+	 * and blue in bits 0-7.
+	 * @return The color.
+	 */
+	public Color get(int rgb) {
+		return getArgb(rgb | 0xFF000000);
+	}
+
+	/**
+	 * Gets the color with the specified ARGB value, which may be
+	 * transparent, creating it if it is not in the cache.
+	 * @param argb The ARGB value, with alpha in bits 24-31, red in bits 16-23,
+	 * green in bits 8-15 and blue in bits 0-7.
+	 * @return The color.
+	 */
+	public Color getArgb(int argb) {
+		int hash = argb * 0x9E3779B1;
+		int index = (hash ^ (hash >>> 16)) & mask;
+
+		Color color = colors[index];
+		if (color != null && color.getRGB() == argb) {
+			return color;
+		}
+
+		color = new Color(argb, true);
+		colors[index] = color;
+		return color;
+	}
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.grahamedgecombe.jterminal.TerminalRegion;
+
+/**
+ * Tracks which cells of a {@link Vt100TerminalModel} have changed. The
+ * damage within each row is recorded as a single span of columns, so marking a
+ * cell as damaged only involves a few comparisons.
+ * <p>
+ * Scrolling a range of rows is recorded separately from the damage, as long
+ * as the same range is scrolled each time, so that a renderer can move what
+ * it has already drawn instead of redrawing the whole range. The damage
+ * within the range moves with the rows.
+ * @author Graham Edgecombe
+ */
+final class DamageTracker {
+
+	/**
+	 * The number of columns.
+	 */
+	private final int columns;
+
+	/**
+	 * The buffer size.
+	 */
+	private final int bufferSize;
+
+	/**
+	 * The first damaged column in each row (inclusive).
+	 */
+	private final int[] startColumns;
+
+	/**
+	 * The last damaged column in each row (exclusive).
+	 */
+	private final int[] endColumns;
+
+	/**
+	 * The first damaged row.
+	 */
+	private int firstRow;
+
+	/**
+	 * The last damaged row.
+	 */
+	private int lastRow;
+
+	/**
+	 * A flag indicating if the whole buffer is damaged.
+	 */
+	private boolean all;
+
+	/**
+	 * The first row of the range which has scrolled.
+	 */
+	private int scrollRow;
+
+	/**
+	 * The number of rows in the range which has scrolled.
+	 */
+	private int scrollHeight;
+
+	/**
+	 * The number of rows the range has scrolled up by, or {@code 0} if no
+	 * range has scrolled.
+	 */
+	private int scrollDistance;
+
+	/**
+	 * The cursor column when the damage was last collected.
+	 */
+	private int cursorColumn = -1;
+
+	/**
+	 * The cursor row when the damage was last collected.
+	 */
+	private int cursorRow = -1;
+
+	/**
+	 * Creates the damage tracker. Initially the whole buffer is damaged.
+	 * @param columns The number of columns.
+	 * @param bufferSize The buffer size.
+	 */
+	public DamageTracker(int columns, int bufferSize) {
+		this.columns = columns;
+		this.bufferSize = bufferSize;
+		this.startColumns = new int[bufferSize];
+		this.endColumns = new int[bufferSize];
+		reset();
+		all = true;
+	}
+
+	/**
+	 * Marks a range of cells within a row as damaged.
+	 * @param row The row.
+	 * @param startColumn The first column (inclusive).
+	 * @param endColumn The last column (exclusive).
+	 */
+	public void damage(int row, int startColumn, int endColumn) {
+		if (all) {
+			return;
+		}
+		if (startColumn < startColumns[row]) {
+			startColumns[row] = startColumn;
+		}
+		if (endColumn > endColumns[row]) {
+			endColumns[row] = endColumn;
+		}
+		if (row < firstRow) {
+			firstRow = row;
+		}
+		if (row > lastRow) {
+			lastRow = row;
+		}
+	}
+
+	/**
+	 * Records that a range of rows spanning every column has scrolled. The
+	 * rows which were exposed are marked as damaged. If a different range has
+	 * already scrolled since the damage was last collected, the whole range
+	 * is marked as damaged instead.
+	 * @param row The first row.
+	 * @param height The number of rows.
+	 * @param n The number of rows the range scrolled by: positive if it
+	 * scrolled up, negative if it scrolled down.
+	 */
+	public void scroll(int row, int height, int n) {
+		if (all || n == 0 || height == 0) {
+			return;
+		}
+
+		int distance = scrollDistance + n;
+		if ((scrollDistance != 0 && (row != scrollRow || height != scrollHeight))
+				|| Math.abs(n) >= height || Math.abs(distance) >= height) {
+			for (int y = row; y < row + height; y++) {
+				damage(y, 0, columns);
+			}
+			if (row == scrollRow && height == scrollHeight) {
+				scrollDistance = 0;
+			}
+			return;
+		}
+
+		/* move the damage with the rows, then damage the exposed rows */
+		int end = row + height;
+		if (n > 0) {
+			System.arraycopy(startColumns, row + n, startColumns, row, height - n);
+			System.arraycopy(endColumns, row + n, endColumns, row, height - n);
+			Arrays.fill(startColumns, end - n, end, 0);
+			Arrays.fill(endColumns, end - n, end, columns);
+		} else {
+			System.arraycopy(startColumns, row, startColumns, row - n, height + n);
+			System.arraycopy(endColumns, row, endColumns, row - n, height + n);
+			Arrays.fill(startColumns, row, row - n, 0);
+			Arrays.fill(endColumns, row, row - n, columns);
+		}
+		if (row < firstRow) {
+			firstRow = row;
+		}
+		if (end - 1 > lastRow) {
+			lastRow = end - 1;
+		}
+
+		scrollRow = row;
+		scrollHeight = height;
+		scrollDistance = distance;
+	}
+
+	/**
+	 * Marks the whole buffer as damaged.
+	 */
+	public void damageAll() {
+		all = true;
+	}
+
+	/**
+	 * Collects the damaged regions and resets the tracker.
+	 * @param cursorColumn The current cursor column.
+	 * @param cursorRow The current cursor row.
+	 * @return The list of damaged regions.
+	 */
+	public List<TerminalRegion> collect(int cursorColumn, int cursorRow) {
+		if (scrollDistance != 0) {
+			/* the cursor was drawn in the rows which are about to be moved */
+			int row = this.cursorRow - scrollDistance;
+			if (this.cursorRow >= scrollRow && this.cursorRow < scrollRow + scrollHeight
+					&& row >= scrollRow && row < scrollRow + scrollHeight) {
+				damageCursor(this.cursorColumn, row);
+			}
+			damageCursor(this.cursorColumn, this.cursorRow);
+			damageCursor(cursorColumn, cursorRow);
+			this.cursorColumn = cursorColumn;
+			this.cursorRow = cursorRow;
+		} else if (cursorColumn != this.cursorColumn || cursorRow != this.cursorRow) {
+			damageCursor(this.cursorColumn, this.cursorRow);
+			damageCursor(cursorColumn, cursorRow);
+			this.cursorColumn = cursorColumn;
+			this.cursorRow = cursorRow;
+		}
+
+		if (all) {
+			reset();
+			return Collections.singletonList(new TerminalRegion(0, 0, columns, bufferSize));
+		}
+		if (firstRow > lastRow) {
+			return Collections.emptyList();
+		}
+
+		List<TerminalRegion> regions = new ArrayList<TerminalRegion>();
+		if (scrollDistance != 0) {
+			regions.add(new TerminalRegion(0, scrollRow, columns, scrollHeight, scrollDistance));
+		}
+		int row = firstRow;
+		while (row <= lastRow) {
+			int start = startColumns[row], end = endColumns[row];
+			if (start >= end) {
+				row++;
+				continue;
+			}
+
+			int first = row;
+			do {
+				row++;
+			} while (row <= lastRow && startColumns[row] == start && endColumns[row] == end);
+
+			regions.add(new TerminalRegion(start, first, end - start, row - first));
+		}
+
+		reset();
+		return regions;
+	}
+
+	/**
+	 * Marks the cell under the cursor as damaged, if the cursor is within the
+	 * buffer.
+	 * @param cursorColumn The cursor column.
+	 * @param cursorRow The cursor row.
+	 */
+	private void damageCursor(int cursorColumn, int cursorRow) {
+		if (cursorRow < 0 || cursorRow >= bufferSize || cursorColumn < 0 || columns == 0) {
+			return;
+		}
+		if (cursorColumn >= columns) {
+			cursorColumn = columns - 1;
+		}
+		damage(cursorRow, cursorColumn, cursorColumn + 1);
+	}
+
+	/**
+	 * Marks every cell as undamaged.
+	 */
+	private void reset() {
+		if (all) {
+			Arrays.fill(startColumns, columns);
+			Arrays.fill(endColumns, 0);
+		} else {
+			for (int row = firstRow; row <= lastRow; row++) {
+				startColumns[row] = columns;
+				endColumns[row] = 0;
+			}
+		}
+		firstRow = bufferSize;
+		lastRow = -1;
+		all = false;
+		scrollDistance = 0;
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A source of output for a {@link Vt100TerminalModel} with its own parser
+ * and decoder state, created with
+ * {@link Vt100TerminalModel#createInputContext()}.
+ * <p>
+ * A control sequence or multi-byte character which is split between two
+ * calls to a context's print methods is reassembled, even if other contexts
+ * print to the model in between. Printing through a context is thread-safe,
+ * but a single context should only be fed by one source at a time, as the
+ * order of the output within it matters.
+ * @author Graham Edgecombe
+ */
+public final class InputContext {
+
+	/**
+	 * The model.
+	 */
+	private final Vt100TerminalModel model;
+
+	/**
+	 * The parser, which is guarded by the model's lock.
+	 */
+	private final AnsiControlSequenceParser parser;
+
+	/**
+	 * The decoder, which is guarded by the model's lock.
+	 */
+	private final Utf8Decoder decoder = new Utf8Decoder();
+
+	/**
+	 * Creates an input context.
+	 * @param model The model.
+	 * @param listener The model's listener.
+	 */
+	InputContext(Vt100TerminalModel model, AnsiControlSequenceListener listener) {
+		this.model = model;
+		this.parser = new AnsiControlSequenceParser(listener);
+	}
+
+	/**
+	 * Gets the model.
+	 * @return The model.
+	 */
+	public Vt100TerminalModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Gets the parser.
+	 * @return The parser.
+	 */
+	AnsiControlSequenceParser getParser() {
+		return parser;
+	}
+
+	/**
+	 * Gets the decoder.
+	 * @return The decoder.
+	 */
+	Utf8Decoder getDecoder() {
+		return decoder;
+	}
+
+	/**
+	 * Prints a string to the terminal.
+	 * @param str The string.
+	 * @throws NullPointerException if the string is {@code null}.
+	 * @see Vt100TerminalModel#print(String)
+	 */
+	public void print(String str) {
+		model.print(this, str);
+	}
+
+	/**
+	 * Prints UTF-8 encoded bytes to the terminal.
+	 * @param bytes The array which contains the bytes.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @throws NullPointerException if the array is {@code null}.
+	 * @throws IndexOutOfBoundsException if the range is not within the array.
+	 * @see Vt100TerminalModel#print(byte[], int, int)
+	 */
+	public void print(byte[] bytes, int offset, int length) {
+		model.print(this, bytes, offset, length);
+	}
+
+	/**
+	 * Prints the remaining UTF-8 encoded bytes in a buffer to the terminal,
+	 * advancing its position to its limit.
+	 * @param buffer The buffer.
+	 * @throws NullPointerException if the buffer is {@code null}.
+	 * @see Vt100TerminalModel#print(ByteBuffer)
+	 */
+	public void print(ByteBuffer buffer) {
+		model.print(this, buffer);
+	}
+
+	/**
+	 * Checks if everything printed through this context has been fully
+	 * processed.
+	 * @return {@code true} if so, {@code false} if not.
+	 * @see Vt100TerminalModel#isAtSequenceBoundary()
+	 */
+	public boolean isAtSequenceBoundary() {
+		return model.isAtSequenceBoundary(this);
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.grahamedgecombe.jterminal.TerminalCell;
+
+/**
+ * A {@link CellBuffer} which stores a {@link TerminalCell} object per cell.
+ * @author Graham Edgecombe
+ */
+final class ObjectCellBuffer extends CellBuffer {
+
+	/**
+	 * The array of cells.
+	 */
+	private final TerminalCell[][] cells;
+
+	/**
+	 * Creates the object cell buffer.
+	 * @param columns The number of columns.
+	 * @param bufferSize The buffer size.
+	 */
+	public ObjectCellBuffer(int columns, int bufferSize) {
+		super(columns, bufferSize);
+		this.cells = new TerminalCell[bufferSize][columns];
+	}
+
+	@Override
+	public TerminalCell get(int column, int row) {
+		return cells[slot(row)][column];
+	}
+
+	@Override
+	public void read(int row, TerminalCell[] destination) {
+		System.arraycopy(cells[slot(row)], 0, destination, 0, columns);
+	}
+
+	@Override
+	public void set(int column, int row, TerminalCell cell) {
+		cells[slot(row)][column] = cell;
+	}
+
+	@Override
+	public void write(int column, int row, char[] text, int offset, int length, int backgroundColor, int foregroundColor, int attributes) {
+		TerminalCell[] data = cells[slot(row)];
+		Color background = SgrColor.getColor(backgroundColor, palette);
+		Color foreground = SgrColor.getColor(foregroundColor, palette);
+		for (int i = 0; i < length; i++) {
+			data[column + i] = TerminalCell.of(text[offset + i], background, foreground, attributes);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * As the cells refer to colors rather than palette indices, this replaces
+	 * every cell with a color from the old palette, which takes time
+	 * proportional to the size of the buffer.
+	 */
+	@Override
+	public void setPalette(Palette palette) {
+		Map<Color, Color> colors = new IdentityHashMap<Color, Color>();
+		for (int i = Palette.SIZE - 1; i >= 0; i--) {
+			Color color = this.palette.getColor(i);
+			colors.put(color, palette.getColor(i));
+		}
+		super.setPalette(palette);
+
+		for (TerminalCell[] row : cells) {
+			for (int column = 0; column < columns; column++) {
+				TerminalCell cell = row[column];
+				if (cell == null) {
+					continue;
+				}
+
+				Color background = colors.get(cell.getBackgroundColor());
+				Color foreground = colors.get(cell.getForegroundColor());
+				if (background != null || foreground != null) {
+					row[column] = TerminalCell.of(cell.getCharacter(),
+							background != null ? background : cell.getBackgroundColor(),
+							foreground != null ? foreground : cell.getForegroundColor(),
+							cell.getAttributes());
+				}
+			}
+		}
+	}
+
+	@Override
+	public void erase(int row, int startColumn, int endColumn) {
+		Arrays.fill(cells[slot(row)], startColumn, endColumn, null);
+	}
+
+	@Override
+	public void fill(int row, int startColumn, int endColumn, TerminalCell cell) {
+		Arrays.fill(cells[slot(row)], startColumn, endColumn, cell);
+	}
+
+	@Override
+	public void copy(int row, int column, int destinationRow, int destinationColumn, int length) {
+		System.arraycopy(cells[slot(row)], column, cells[slot(destinationRow)], destinationColumn, length);
+	}
+
+	@Override
+	protected void clearSlot(int slot) {
+		Arrays.fill(cells[slot], null);
+	}
+
+	@Override
+	protected void swapSlots(int a, int b) {
+		TerminalCell[] tmp = cells[a];
+		cells[a] = cells[b];
+		cells[b] = tmp;
+	}
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import com.grahamedgecombe.jterminal.TerminalCell;
+
+/**
+ * A {@link CellBuffer} which packs each cell into three {@code int}s: one
+ * containing the character, flags and attributes, and one for each of the
+ * background and foreground colors. Every row is a single {@code int} array,
+ * so no objects are allocated per cell. {@link #get(int, int)} returns
+ * interned cells from {@link TerminalCell#of(char, Color, Color, int)}.
+ * <p>
+ * A color is stored as a code accepted by
+ * {@link SgrColor#getColor(int, Palette)}, which is either a palette index or
+ * a 24-bit RGB value, so {@link Color} objects are only looked up when a
+ * cell is read and changing the palette takes effect immediately. If the
+ * corresponding ARGB flag is set, the color is instead stored as an ARGB
+ * value, which keeps any transparency. The latter is only used for cells set
+ * with {@link #set(int, int, TerminalCell)}, and is resolved through a
+ * {@link ColorCache} so that reading such a cell does not allocate.
+ * @author Graham Edgecombe
+ */
+final class PackedCellBuffer extends CellBuffer {
+
+	/**
+	 * The number of {@code int}s used to store each cell.
+	 */
+	private static final int CELL_SIZE = 3;
+
+	/**
+	 * The offset of the character and flags within a cell.
+	 */
+	private static final int TEXT = 0;
+
+	/**
+	 * The offset of the background color within a cell.
+	 */
+	private static final int BACKGROUND = 1;
+
+	/**
+	 * The offset of the foreground color within a cell.
+	 */
+	private static final int FOREGROUND = 2;
+
+	/**
+	 * The mask used to extract the character.
+	 */
+	private static final int CHARACTER_MASK = 0xFFFF;
+
+	/**
+	 * The flag set if the cell is not empty.
+	 */
+	private static final int FLAG_PRESENT = 1 << 16;
+
+	/**
+	 * The flag set if the background color is an ARGB value.
+	 */
+	private static final int FLAG_BACKGROUND_RGB = 1 << 17;
+
+	/**
+	 * The flag set if the foreground color is an ARGB value.
+	 */
+	private static final int FLAG_FOREGROUND_RGB = 1 << 18;
+
+	/**
+	 * The position of the attributes.
+	 */
+	private static final int ATTRIBUTES_SHIFT = 19;
+
+	/**
+	 * The number of slots in the cache of ARGB colors.
+	 */
+	private static final int CACHE_SIZE = 256;
+
+	/**
+	 * The cache of ARGB colors, which is separate from the cache of 24-bit
+	 * SGR colors so that the two do not evict each other.
+	 */
+	private static final ColorCache CACHE = new ColorCache(CACHE_SIZE);
+
+	/**
+	 * The array of rows.
+	 */
+	private final int[][] rows;
+
+	/**
+	 * Creates the packed cell buffer.
+	 * @param columns The number of columns.
+	 * @param bufferSize The buffer size.
+	 */
+	public PackedCellBuffer(int columns, int bufferSize) {
+		super(columns, bufferSize);
+		this.rows = new int[bufferSize][columns * CELL_SIZE];
+	}
+
+	@Override
+	public TerminalCell get(int column, int row) {
+		int[] data = rows[slot(row)];
+		int offset = column * CELL_SIZE;
+
+		int text = data[offset + TEXT];
+		if ((text & FLAG_PRESENT) == 0) {
+			return null;
+		}
+
+		Color back = decodeColor(data[offset + BACKGROUND], (text & FLAG_BACKGROUND_RGB) != 0);
+		Color fore = decodeColor(data[offset + FOREGROUND], (text & FLAG_FOREGROUND_RGB) != 0);
+		int attributes = (text >>> ATTRIBUTES_SHIFT) & TerminalCell.ATTRIBUTE_MASK;
+		return TerminalCell.of((char) (text & CHARACTER_MASK), back, fore, attributes);
+	}
+
+	@Override
+	public void read(int row, TerminalCell[] destination) {
+		for (int column = 0; column < columns; column++) {
+			destination[column] = get(column, row);
+		}
+	}
+
+	@Override
+	public void set(int column, int row, TerminalCell cell) {
+		int[] data = rows[slot(row)];
+		int offset = column * CELL_SIZE;
+
+		if (cell == null) {
+			data[offset + TEXT] = 0;
+			return;
+		}
+
+		int flags = FLAG_PRESENT | FLAG_BACKGROUND_RGB | FLAG_FOREGROUND_RGB;
+		data[offset + TEXT] = cell.getCharacter() | flags
+				| (cell.getAttributes() << ATTRIBUTES_SHIFT);
+		data[offset + BACKGROUND] = cell.getBackgroundColor().getRGB();
+		data[offset + FOREGROUND] = cell.getForegroundColor().getRGB();
+	}
+
+	@Override
+	public void write(int column, int row, char[] text, int offset, int length,
+			int backgroundColor, int foregroundColor, int attributes) {
+		int[] data = rows[slot(row)];
+		int index = column * CELL_SIZE;
+		int flags = FLAG_PRESENT | (attributes << ATTRIBUTES_SHIFT);
+		for (int i = 0; i < length; i++, index += CELL_SIZE) {
+			data[index + TEXT] = text[offset + i] | flags;
+			data[index + BACKGROUND] = backgroundColor;
+			data[index + FOREGROUND] = foregroundColor;
+		}
+	}
+
+	@Override
+	public void erase(int row, int startColumn, int endColumn) {
+		Arrays.fill(rows[slot(row)], startColumn * CELL_SIZE, endColumn * CELL_SIZE, 0);
+	}
+
+	@Override
+	public void fill(int row, int startColumn, int endColumn, TerminalCell cell) {
+		if (cell == null || startColumn >= endColumn) {
+			erase(row, startColumn, endColumn);
+			return;
+		}
+
+		/* encode the first cell, then double the filled range each time */
+		set(startColumn, row, cell);
+		int[] data = rows[slot(row)];
+		int start = startColumn * CELL_SIZE, end = endColumn * CELL_SIZE;
+		for (int filled = CELL_SIZE; filled < end - start; filled *= 2) {
+			int length = Math.min(filled, end - start - filled);
+			System.arraycopy(data, start, data, start + filled, length);
+		}
+	}
+
+	@Override
+	public void copy(int row, int column, int destinationRow, int destinationColumn, int length) {
+		int[] source = rows[slot(row)], destination = rows[slot(destinationRow)];
+		int from = column * CELL_SIZE, to = destinationColumn * CELL_SIZE;
+		System.arraycopy(source, from, destination, to, length * CELL_SIZE);
+	}
+
+	@Override
+	protected void clearSlot(int slot) {
+		Arrays.fill(rows[slot], 0);
+	}
+
+	@Override
+	protected void swapSlots(int a, int b) {
+		int[] tmp = rows[a];
+		rows[a] = rows[b];
+		rows[b] = tmp;
+	}
+
+	/**
+	 * Decodes a packed color.
+	 * @param color The packed color.
+	 * @param rgb A flag indicating if the color is an ARGB value rather than
+	 * an index.
+	 * @return The color.
+	 */
+	private Color decodeColor(int color, boolean rgb) {
+		return rgb ? CACHE.getArgb(color) : SgrColor.getColor(color, palette);
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.awt.Color;
+
+/**
+ * An immutable set of 256 colors which the SGR ANSI escape sequence refers
+ * to by index. Indices 0-7 are the normal intensity colors, indices 8-15
+ * are the bright intensity colors, indices 16-231 are a 6x6x6 color cube and
+ * indices 232-255 are a grayscale ramp.
+ * <p>
+ * Cells refer to palette colors by index rather than by value, so giving a
+ * {@link Vt100TerminalModel} a different palette changes the colors of
+ * everything which has already been printed.
+ * <p>
+ * Every slot holds its own {@link Color} instance, even if two slots were
+ * given the same one, so that a color can be traced back to the slot it came
+ * from by identity.
+ * @author Graham Edgecombe
+ */
+public final class Palette {
+
+	/**
+	 * The number of colors in a palette.
+	 */
+	public static final int SIZE = 256;
+
+	/**
+	 * The number of normal and bright intensity colors, which are the colors
+	 * that a theme usually changes.
+	 */
+	public static final int ANSI_SIZE = 16;
+
+	/**
+	 * The default palette.
+	 */
+	public static final Palette DEFAULT = new Palette(new Color[] {
+		/* normal intensity */
+		new Color(0, 0, 0),
+		new Color(128, 0, 0),
+		new Color(0, 128, 0),
+		new Color(128, 128, 0),
+		new Color(0, 0, 128),
+		new Color(128, 0, 128),
+		new Color(0, 128, 128),
+		new Color(192, 192, 192),
+
+		/* bright intensity */
+		new Color(128, 128, 128),
+		new Color(255, 0, 0),
+		new Color(0, 255, 0),
+		new Color(255, 255, 0),
+		new Color(0, 0, 255),
+		new Color(255, 0, 255),
+		new Color(0, 255, 255),
+		new Color(255, 255, 255)
+	});
+
+	/**
+	 * The colors.
+	 */
+	private final Color[] colors;
+
+	/**
+	 * Creates a palette.
+	 * @param colors The colors, which must either be all 256 colors or just
+	 * the first 16. In the latter case the color cube and grayscale ramp are
+	 * filled in with their usual values. The colors are copied into new
+	 * instances.
+	 * @throws NullPointerException if the array or any of the colors are
+	 * {@code null}.
+	 * @throws IllegalArgumentException if the array is the wrong length.
+	 */
+	public Palette(Color[] colors) {
+		if (colors == null) {
+			throw new NullPointerException("colors");
+		}
+		if (colors.length != SIZE && colors.length != ANSI_SIZE) {
+			throw new IllegalArgumentException("palette must contain 16 or 256 colors");
+		}
+
+		this.colors = new Color[SIZE];
+		for (int i = 0; i < colors.length; i++) {
+			if (colors[i] == null) {
+				throw new NullPointerException("colors[" + i + "]");
+			}
+			this.colors[i] = copyOf(colors[i]);
+		}
+		if (colors.length == ANSI_SIZE) {
+			fillExtendedColors();
+		}
+	}
+
+	/**
+	 * Creates a palette from an array of 256 colors which already belong to
+	 * it.
+	 * @param colors The colors.
+	 * @param index The index of the only color which may need to be copied.
+	 */
+	private Palette(Color[] colors, int index) {
+		this.colors = colors;
+		this.colors[index] = copyOf(colors[index]);
+	}
+
+	/**
+	 * Copies a color into a new instance.
+	 * @param color The color.
+	 * @return The copy.
+	 */
+	private static Color copyOf(Color color) {
+		return new Color(color.getRGB(), true);
+	}
+
+	/**
+	 * Fills in the color cube and grayscale ramp.
+	 */
+	private void fillExtendedColors() {
+		int index = ANSI_SIZE;
+		for (int r = 0; r < 6; r++) {
+			for (int g = 0; g < 6; g++) {
+				for (int b = 0; b < 6; b++) {
+					colors[index++] = new Color(cubeLevel(r), cubeLevel(g), cubeLevel(b));
+				}
+			}
+		}
+
+		for (int i = 0; i < 24; i++) {
+			int level = 8 + i * 10;
+			colors[index++] = new Color(level, level, level);
+		}
+	}
+
+	/**
+	 * Gets the intensity of a step in the color cube.
+	 * @param step The step, between {@code 0} and {@code 5}.
+	 * @return The intensity.
+	 */
+	private static int cubeLevel(int step) {
+		return step == 0 ? 0 : 55 + step * 40;
+	}
+
+	/**
+	 * Gets a color.
+	 * @param index The index of the color.
+	 * @return The color.
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 */
+	public Color getColor(int index) {
+		return colors[index];
+	}
+
+	/**
+	 * Creates a copy of this palette with one color changed.
+	 * @param index The index of the color.
+	 * @param color The new color.
+	 * @return The new palette.
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 * @throws NullPointerException if the color is {@code null}.
+	 */
+	public Palette withColor(int index, Color color) {
+		if (index < 0 || index >= SIZE) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (color == null) {
+			throw new NullPointerException("color");
+		}
+		Color[] copy = colors.clone();
+		copy[index] = color;
+		return new Palette(copy, index);
+	}
+
+}
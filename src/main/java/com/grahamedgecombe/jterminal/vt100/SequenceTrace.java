@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import java.io.IOException;
+
+/**
+ * A fixed-size record of the most recent events seen by a
+ * {@link Vt100TerminalModel}'s parser: control sequences, runs of text and
+ * control characters. It is intended to be left enabled so that a
+ * misbehaving application's output can be inspected after the fact.
+ * <p>
+ * Events are encoded into a {@code long} array which is allocated up front,
+ * so recording an event does not allocate any objects. Each event takes
+ * {@value #RECORD_SIZE} {@code long}s. Only the first {@value #PARAMETERS}
+ * parameters of a control sequence are kept.
+ * <p>
+ * This class is not thread-safe. Once a trace has been given to
+ * {@link Vt100TerminalModel#setTrace(SequenceTrace)}, use
+ * {@link Vt100TerminalModel#dumpTrace(Appendable)} to read it.
+ * @author Graham Edgecombe
+ */
+public final class SequenceTrace {
+
+	/**
+	 * The default number of events which are kept.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * The number of {@code long}s used to store each event.
+	 */
+	public static final int RECORD_SIZE = 4;
+
+	/**
+	 * The number of parameters of a control sequence which are kept.
+	 */
+	public static final int PARAMETERS = (RECORD_SIZE - 1) * 4;
+
+	/**
+	 * The event type of a run of text.
+	 */
+	private static final int TEXT = 1;
+
+	/**
+	 * The event type of a control character.
+	 */
+	private static final int CONTROL = 2;
+
+	/**
+	 * The event type of a control sequence.
+	 */
+	private static final int SEQUENCE = 3;
+
+	/**
+	 * The encoded events. The first {@code long} of each record is a header
+	 * which contains the event type in its lowest two bits. For a control
+	 * sequence, the header also contains the command character, private
+	 * marker, intermediate characters, the number of parameters and a mask of
+	 * the parameters which were omitted, and the rest of the record contains
+	 * the parameters, 16 bits each.
+	 */
+	private final long[] records;
+
+	/**
+	 * The number of events which can be kept.
+	 */
+	private final int capacity;
+
+	/**
+	 * The index of the record to which the next event is written.
+	 */
+	private int position = 0;
+
+	/**
+	 * The number of events which have been recorded.
+	 */
+	private long count = 0;
+
+	/**
+	 * Creates a trace which keeps the {@link #DEFAULT_CAPACITY} most recent
+	 * events.
+	 */
+	public SequenceTrace() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a trace.
+	 * @param capacity The number of events which are kept.
+	 * @throws IllegalArgumentException if the capacity is not positive or is
+	 * too large.
+	 */
+	public SequenceTrace(int capacity) {
+		if (capacity <= 0 || capacity > Integer.MAX_VALUE / RECORD_SIZE) {
+			throw new IllegalArgumentException("capacity out of range");
+		}
+		this.capacity = capacity;
+		this.records = new long[capacity * RECORD_SIZE];
+	}
+
+	/**
+	 * Creates a copy of a trace.
+	 * @param trace The trace to copy.
+	 */
+	private SequenceTrace(SequenceTrace trace) {
+		this.capacity = trace.capacity;
+		this.records = trace.records.clone();
+		this.position = trace.position;
+		this.count = trace.count;
+	}
+
+	/**
+	 * Creates a copy of this trace.
+	 * @return The copy.
+	 */
+	SequenceTrace copy() {
+		return new SequenceTrace(this);
+	}
+
+	/**
+	 * Claims the record for the next event.
+	 * @return The index of the first {@code long} of the record.
+	 */
+	private int next() {
+		int index = position;
+		position = index + RECORD_SIZE == records.length ? 0 : index + RECORD_SIZE;
+		count++;
+		return index;
+	}
+
+	/**
+	 * Records a run of text.
+	 * @param length The number of characters.
+	 */
+	void recordText(int length) {
+		records[next()] = TEXT | ((long) length << 2);
+	}
+
+	/**
+	 * Records a control character.
+	 * @param character The control character.
+	 */
+	void recordControl(char character) {
+		records[next()] = CONTROL | ((long) character << 2);
+	}
+
+	/**
+	 * Records a control sequence.
+	 * @param seq The control sequence.
+	 */
+	void recordSequence(AnsiControlSequence seq) {
+		int index = next();
+		int parameters = seq.getParameterCount();
+		int kept = Math.min(parameters, PARAMETERS);
+
+		long omitted = 0;
+		for (int i = 1; i < RECORD_SIZE; i++) {
+			records[index + i] = 0;
+		}
+		for (int i = 0; i < kept; i++) {
+			int value = seq.getParameter(i, -1);
+			if (value < 0) {
+				omitted |= 1L << i;
+			} else {
+				records[index + 1 + (i >> 2)] |= (long) value << ((i & 3) << 4);
+			}
+		}
+
+		records[index] = SEQUENCE
+				| ((long) (seq.getCommand() & 0xFF) << 2)
+				| ((long) (seq.getPrivateMarker() & 0xFF) << 10)
+				| ((long) (seq.getIntermediates() & 0xFFFF) << 18)
+				| ((long) parameters << 34)
+				| (omitted << 40);
+	}
+
+	/**
+	 * Gets the number of events which can be kept.
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the total number of events which have been recorded, including
+	 * those which have since been overwritten.
+	 * @return The number of events.
+	 */
+	public long getEventCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the number of events which have been overwritten by newer events.
+	 * @return The number of events.
+	 */
+	public long getDroppedEventCount() {
+		return Math.max(count - capacity, 0);
+	}
+
+	/**
+	 * Discards every event.
+	 */
+	public void clear() {
+		position = 0;
+		count = 0;
+	}
+
+	/**
+	 * Writes the events which are kept, oldest first, one per line. Control
+	 * sequences are written as {@code CSI} followed by their private marker,
+	 * parameters, intermediate characters and command, runs of text as
+	 * {@code TEXT} followed by their length and control characters as
+	 * {@code CTRL} followed by their code in hexadecimal.
+	 * @param out The destination.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void dump(Appendable out) throws IOException {
+		long kept = Math.min(count, capacity);
+		if (kept < count) {
+			out.append("... ").append(Long.toString(count - kept)).append(" earlier events dropped\n");
+		}
+
+		int index = position - (int) kept * RECORD_SIZE;
+		if (index < 0) {
+			index += records.length;
+		}
+		StringBuilder line = new StringBuilder();
+		for (long i = 0; i < kept; i++) {
+			line.setLength(0);
+			format(index, line);
+			out.append(line).append('\n');
+			index += RECORD_SIZE;
+			if (index == records.length) {
+				index = 0;
+			}
+		}
+	}
+
+	/**
+	 * Formats an event.
+	 * @param index The index of the first {@code long} of its record.
+	 * @param line The buffer to append the event to.
+	 */
+	private void format(int index, StringBuilder line) {
+		long header = records[index];
+		switch ((int) header & 3) {
+		case TEXT:
+			line.append("TEXT ").append(header >>> 2);
+			break;
+		case CONTROL:
+			line.append("CTRL 0x");
+			appendHex(line, (int) (header >>> 2) & 0xFFFF);
+			break;
+		case SEQUENCE:
+			line.append("CSI ");
+
+			char marker = (char) ((header >>> 10) & 0xFF);
+			if (marker != 0) {
+				line.append(marker);
+			}
+
+			int parameters = (int) ((header >>> 34) & 0x3F);
+			int kept = Math.min(parameters, PARAMETERS);
+			for (int i = 0; i < kept; i++) {
+				if (i != 0) {
+					line.append(';');
+				}
+				if ((header & (1L << (40 + i))) == 0) {
+					line.append((records[index + 1 + (i >> 2)] >>> ((i & 3) << 4)) & 0xFFFF);
+				}
+			}
+			if (parameters > kept) {
+				line.append(";...");
+			}
+
+			int intermediates = (int) ((header >>> 18) & 0xFFFF);
+			if (intermediates > 0xFF) {
+				line.append((char) (intermediates >> 8));
+			}
+			if (intermediates != 0) {
+				line.append((char) (intermediates & 0xFF));
+			}
+
+			line.append((char) ((header >>> 2) & 0xFF));
+			break;
+		}
+	}
+
+	/**
+	 * Appends a character code as two or four hexadecimal digits.
+	 * @param line The buffer.
+	 * @param code The character code.
+	 */
+	private static void appendHex(StringBuilder line, int code) {
+		String hex = Integer.toHexString(code).toUpperCase();
+		for (int i = hex.length(); i < (code > 0xFF ? 4 : 2); i++) {
+			line.append('0');
+		}
+		line.append(hex);
+	}
+
+}
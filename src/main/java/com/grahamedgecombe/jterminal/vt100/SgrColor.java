@@ -25,39 +25,70 @@ package com.grahamedgecombe.jterminal.vt100;
 import java.awt.Color;
 
 /**
- * Contains colors used by the SGR ANSI escape sequence.
+ * Converts the color codes used by the SGR ANSI escape sequence into colors.
+ * <p>
+ * Colors are passed around as compact {@code int} codes rather than
+ * {@link Color} objects. A code is either an index into a {@link Palette}, or
+ * an RGB value with the {@link #RGB} flag set. Codes are only turned into
+ * {@link Color} objects by {@link #getColor(int, Palette)}, which looks
+ * palette colors up and caches RGB colors.
  * @author Graham Edgecombe
  */
 final class SgrColor {
 
 	/**
-	 * An array of normal intensity colors.
+	 * The flag set in a color code which contains an RGB value rather than a
+	 * palette index.
 	 */
-	public static final Color[] COLOR_NORMAL = new Color[] {
-		new Color(0, 0, 0),
-		new Color(128, 0, 0),
-		new Color(0, 128, 0),
-		new Color(128, 128, 0),
-		new Color(0, 0, 128),
-		new Color(128, 0, 128),
-		new Color(0, 128, 128),
-		new Color(192, 192, 192)
-	};
+	public static final int RGB = 1 << 24;
 
 	/**
-	 * An array of bright intensity colors.
+	 * The number of normal intensity colors, which is also the offset of the
+	 * bright intensity colors in the palette.
 	 */
-	public static final Color[] COLOR_BRIGHT = new Color[] {
-		new Color(128, 128, 128),
-		new Color(255, 0, 0),
-		new Color(0, 255, 0),
-		new Color(255, 255, 0),
-		new Color(0, 0, 255),
-		new Color(0, 0, 255),
-		new Color(255, 0, 255),
-		new Color(0, 255, 255),
-		new Color(255, 255, 255)
-	};
+	public static final int NORMAL_COLORS = 8;
+
+	/**
+	 * The number of slots in the cache of RGB colors.
+	 */
+	private static final int CACHE_SIZE = 1024;
+
+	/**
+	 * The cache of RGB colors.
+	 */
+	private static final ColorCache CACHE = new ColorCache(CACHE_SIZE);
+
+	/**
+	 * Creates the code of an RGB color.
+	 * @param red The red component.
+	 * @param green The green component.
+	 * @param blue The blue component.
+	 * @return The color code.
+	 */
+	public static int rgb(int red, int green, int blue) {
+		return RGB | (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * Gets the bright version of a color. Only the normal intensity colors,
+	 * with codes 0-7, have one: any other code is returned unchanged.
+	 * @param code The color code.
+	 * @return The code of the bright color.
+	 */
+	public static int brighten(int code) {
+		return code < NORMAL_COLORS ? code + NORMAL_COLORS : code;
+	}
+
+	/**
+	 * Gets a color by its code.
+	 * @param code The color code: either a palette index or an RGB value with
+	 * the {@link #RGB} flag set.
+	 * @param palette The palette.
+	 * @return The color.
+	 */
+	public static Color getColor(int code, Palette palette) {
+		return (code & RGB) != 0 ? CACHE.get(code) : palette.getColor(code);
+	}
 
 	/**
 	 * Default private constructor to prevent instantiation.
@@ -67,4 +98,3 @@ final class SgrColor {
 	}
 
 }
-
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+/**
+ * An incremental UTF-8 decoder. A character which is split between two calls
+ * is kept in the decoder until the rest of it arrives, so output can be
+ * decoded as it is read without knowing where the character boundaries are.
+ * <p>
+ * Bytes in the range {@code 0x80-0x9F} which do not continue a multi-byte
+ * character are decoded as 8-bit C1 control characters, so that programs
+ * which send them, such as a single byte CSI, still work. Any other invalid
+ * input is decoded as {@link #REPLACEMENT_CHARACTER}.
+ * @author Graham Edgecombe
+ */
+final class Utf8Decoder {
+
+	/**
+	 * The character which invalid input is decoded as.
+	 */
+	public static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+	/**
+	 * The code point of the character which is being decoded.
+	 */
+	private int codePoint;
+
+	/**
+	 * The number of continuation bytes still expected.
+	 */
+	private int remaining = 0;
+
+	/**
+	 * The smallest code point which may be encoded with the number of bytes
+	 * that the current character uses, used to reject overlong encodings.
+	 */
+	private int minimum;
+
+	/**
+	 * Checks if the decoder is not part way through a multi-byte character.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isIdle() {
+		return remaining == 0;
+	}
+
+	/**
+	 * Decodes a range of an array. The destination must have room for
+	 * {@code length + 1} characters.
+	 * @param source The array which contains the bytes.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @param destination The array to decode the characters into.
+	 * @param destinationOffset The index at which to start writing characters.
+	 * @return The number of characters which were written.
+	 */
+	public int decode(byte[] source, int offset, int length, char[] destination, int destinationOffset) {
+		int index = destinationOffset;
+		for (int end = offset + length; offset < end; offset++) {
+			int b = source[offset];
+			if (b >= 0 && remaining == 0) {
+				destination[index++] = (char) b;
+			} else {
+				index = decode(b & 0xFF, destination, index);
+			}
+		}
+		return index - destinationOffset;
+	}
+
+	/**
+	 * Decodes a single byte.
+	 * @param b The byte, as an unsigned value.
+	 * @param destination The array to decode the characters into.
+	 * @param index The index at which to write the next character.
+	 * @return The index at which to write the character after that.
+	 */
+	private int decode(int b, char[] destination, int index) {
+		if (remaining > 0) {
+			if ((b & 0xC0) == 0x80) {
+				codePoint = (codePoint << 6) | (b & 0x3F);
+				if (--remaining == 0) {
+					if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+						destination[index++] = REPLACEMENT_CHARACTER;
+					} else if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+						int offset = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+						destination[index++] = (char) (Character.MIN_HIGH_SURROGATE + (offset >>> 10));
+						destination[index++] = (char) (Character.MIN_LOW_SURROGATE + (offset & 0x3FF));
+					} else {
+						destination[index++] = (char) codePoint;
+					}
+				}
+				return index;
+			}
+
+			/* the character was cut short, so start again with this byte */
+			destination[index++] = REPLACEMENT_CHARACTER;
+			remaining = 0;
+		}
+
+		if (b < 0xA0) {
+			destination[index++] = (char) b;
+		} else if (b < 0xC0) {
+			destination[index++] = REPLACEMENT_CHARACTER;
+		} else if (b < 0xE0) {
+			start(b & 0x1F, 1, 0x80);
+		} else if (b < 0xF0) {
+			start(b & 0x0F, 2, 0x800);
+		} else if (b < 0xF8) {
+			start(b & 0x07, 3, Character.MIN_SUPPLEMENTARY_CODE_POINT);
+		} else {
+			destination[index++] = REPLACEMENT_CHARACTER;
+		}
+		return index;
+	}
+
+	/**
+	 * Starts decoding a multi-byte character.
+	 * @param bits The bits of the code point in the first byte.
+	 * @param remaining The number of continuation bytes.
+	 * @param minimum The smallest code point which may be encoded in this many
+	 * bytes.
+	 */
+	private void start(int bits, int remaining, int minimum) {
+		this.codePoint = bits;
+		this.remaining = remaining;
+		this.minimum = minimum;
+	}
+
+}
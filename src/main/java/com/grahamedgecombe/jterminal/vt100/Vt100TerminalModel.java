@@ -23,15 +23,31 @@
 package com.grahamedgecombe.jterminal.vt100;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.grahamedgecombe.jterminal.AbstractTerminalModel;
 import com.grahamedgecombe.jterminal.TerminalCell;
 import com.grahamedgecombe.jterminal.TerminalModel;
+import com.grahamedgecombe.jterminal.TerminalRegion;
+import com.grahamedgecombe.jterminal.TerminalSnapshot;
 import com.grahamedgecombe.jterminal.bell.BellStrategy;
 import com.grahamedgecombe.jterminal.bell.NopBellStrategy;
+import com.grahamedgecombe.jterminal.metrics.MetricsSink;
+import com.grahamedgecombe.jterminal.metrics.NopMetricsSink;
 
 /**
- * A VT100/ANSI-compatible terminal model.
+ * A VT100/ANSI-compatible terminal model. This class is thread-safe: output
+ * may be printed from one thread while another thread, such as the event
+ * dispatch thread, reads the model.
+ * <p>
+ * The state is guarded by a fair lock, which printing releases after every
+ * chunk of 4096 characters. A reader therefore waits for at most one
+ * chunk to be parsed, however much output is being printed, and
+ * {@link #collectDamage(int, int, TerminalSnapshot)} copies the screen while
+ * holding the lock once rather than once for every cell.
  * @author Graham Edgecombe
  */
 public class Vt100TerminalModel extends AbstractTerminalModel {
@@ -55,18 +71,21 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 
 		@Override
 		public void parsedControlSequence(AnsiControlSequence seq) {
+			if (trace != null) {
+				trace.recordSequence(seq);
+			}
 			char command = seq.getCommand();
-			String[] parameters = seq.getParameters();
+			metrics.controlSequenceDispatched(command);
+			if (seq.getPrivateMarker() != 0 || seq.getIntermediates() != 0) {
+				return;
+			}
 
 			switch (command) {
 			case 'A':
 			case 'B':
 			case 'C':
 			case 'D':
-				int n = 1;
-				if (parameters.length == 1) {
-					n = Integer.parseInt(parameters[0]);
-				}
+				int n = Math.max(seq.getParameter(0, 1), 1);
 				if (command == 'A') {
 					moveCursorUp(n);
 				} else if (command == 'B') {
@@ -79,10 +98,7 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 				break;
 			case 'E':
 			case 'F':
-				n = 1;
-				if (parameters.length == 1) {
-					n = Integer.parseInt(parameters[0]);
-				}
+				n = Math.max(seq.getParameter(0, 1), 1);
 				if (command == 'E') {
 					moveCursorDown(n);
 				} else if (command == 'F') {
@@ -91,99 +107,134 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 				setCursorColumn(0);
 				break;
 			case 'G':
-				if (parameters.length == 1) {
-					n = Integer.parseInt(parameters[0]);
-					setCursorColumn(n - 1);
-				}
+				n = Math.max(seq.getParameter(0, 1), 1);
+				setCursorColumn(Math.min(n, columns) - 1);
 				break;
 			case 'H':
 			case 'f':
-				if (parameters.length == 2) {
-					n = 1;
-					int m = 1;
-					if (parameters[0].length() > 0) {
-						n = Integer.parseInt(parameters[0]);
-					}
-					if (parameters[1].length() > 0) {
-						m = Integer.parseInt(parameters[1]);
-					}
-					setCursorRow(n - 1);
-					setCursorColumn(m - 1);
-				}
+				n = Math.max(seq.getParameter(0, 1), 1);
+				int m = Math.max(seq.getParameter(1, 1), 1);
+				setCursorRow(Math.min(n, rows) - 1);
+				setCursorColumn(Math.min(m, columns) - 1);
 				break;
 			case 'J':
-				n = 0;
-				if (parameters.length == 1) {
-					n = Integer.parseInt(parameters[0]);
-				}
+				n = seq.getParameter(0, 0);
 				if (n == 0) {
-					int row = cursorRow;
-					int column = cursorColumn;
-					while(row < rows) {
-						while(column < columns) {
-							cells[row][column] = null;
-							column++;
-						}
-						column = 0;
-						row++;
+					if (cursorRow < rows) {
+						erase(cursorRow, Math.min(cursorColumn, columns), columns);
+						fill(0, cursorRow + 1, columns, rows - cursorRow - 1, null);
 					}
 				} else if (n == 1) {
-					int row = cursorRow;
-					int column = cursorColumn;
-					while(row >= 0) {
-						while(column >= 0) {
-							cells[row][column] = null;
-							column--;
-						}
-						column = columns - 1;
-						row--;
+					int row = Math.min(cursorRow, bufferSize);
+					if (row < bufferSize) {
+						erase(row, 0, Math.min(cursorColumn + 1, columns));
 					}
+					fill(0, 0, columns, row, null);
 				} else if (n == 2) {
-					clear();
+					fill(0, 0, columns, rows, null);
 				}
 				break;
 			case 'K':
-				n = 0;
-				if (parameters.length == 1) {
-					n = Integer.parseInt(parameters[0]);
+				if (cursorRow >= bufferSize) {
+					break;
 				}
+				n = seq.getParameter(0, 0);
 				if (n == 0) {
-					for (int row = cursorRow; row < rows; row++) {
-						cells[row][cursorColumn] = null;
-					}
+					erase(cursorRow, Math.min(cursorColumn, columns), columns);
 				} else if (n == 1) {
-					for (int row = cursorRow; row >= 0; row--) {
-						cells[row][cursorColumn] = null;
-					}
+					erase(cursorRow, 0, Math.min(cursorColumn + 1, columns));
 				} else if (n == 2) {
-					for (int column = 0; column < columns; column++) {
-						cells[cursorRow][column] = null;
+					erase(cursorRow, 0, columns);
+				}
+				break;
+			case 'L':
+			case 'M':
+				if (cursorRow >= scrollTop && cursorRow < scrollBottom) {
+					n = Math.max(seq.getParameter(0, 1), 1);
+					scroll(0, cursorRow, columns, scrollBottom - cursorRow, command == 'L' ? -n : n);
+					cursorColumn = 0;
+				}
+				break;
+			case '@':
+			case 'P':
+			case 'X':
+				if (cursorRow < bufferSize && columns > 0) {
+					int column = Math.min(cursorColumn, columns - 1);
+					n = Math.min(Math.max(seq.getParameter(0, 1), 1), columns - column);
+					if (command == '@') {
+						copy(column, cursorRow, columns - column - n, 1, column + n, cursorRow);
+						erase(cursorRow, column, column + n);
+					} else if (command == 'P') {
+						copy(column + n, cursorRow, columns - column - n, 1, column, cursorRow);
+						erase(cursorRow, columns - n, columns);
+					} else {
+						erase(cursorRow, column, column + n);
 					}
 				}
 				break;
-			case 'm':
-				if (parameters.length == 0) {
-					parameters = new String[] { "0" };
+			case 'S':
+			case 'T':
+				/* CSI T with more parameters is xterm's mouse highlight tracking */
+				if (seq.getParameterCount() <= 1) {
+					n = Math.max(seq.getParameter(0, 1), 1);
+					scroll(0, scrollTop, columns, scrollBottom - scrollTop, command == 'S' ? n : -n);
+				}
+				break;
+			case 'r':
+				n = Math.max(seq.getParameter(0, 1), 1);
+				m = seq.getParameter(1, rows);
+				/* an explicit bottom of 0 means the last row, like an omitted one */
+				m = m == 0 ? rows : Math.min(m, rows);
+				if (n < m) {
+					scrollTop = n - 1;
+					scrollBottom = m;
+					cursorRow = 0;
+					cursorColumn = 0;
 				}
-				for (String parameter : parameters) {
-					if (parameter.equals("0")) {
+				break;
+			case 'm':
+				int count = Math.max(seq.getParameterCount(), 1);
+				for (int i = 0; i < count; i++) {
+					int parameter = seq.getParameter(i, 0);
+					if (parameter < SGR_ATTRIBUTES.length) {
+						int change = SGR_ATTRIBUTES[parameter];
+						attributes = (attributes & ~(change >> 8)) | (change & TerminalCell.ATTRIBUTE_MASK);
+						if (parameter == 0) {
+							foregroundColor = DEFAULT_FOREGROUND_COLOR;
+							backgroundColor = DEFAULT_BACKGROUND_COLOR;
+							backgroundBold = DEFAULT_BACKGROUND_BOLD;
+							foregroundBold = DEFAULT_FOREGROUND_BOLD;
+						} else if (parameter == 1) {
+							backgroundBold = true;
+							foregroundBold = true;
+						} else if (parameter == 22) {
+							backgroundBold = false;
+							foregroundBold = false;
+						}
+					} else if (parameter >= 30 && parameter <= 37) {
+						foregroundColor = parameter - 30;
+					} else if (parameter == 38) {
+						int code = parseExtendedColor(seq, i, count);
+						if (code != -1) {
+							foregroundColor = code;
+						}
+						i += extendedColorLength(seq, i);
+					} else if (parameter == 39) {
 						foregroundColor = DEFAULT_FOREGROUND_COLOR;
-						backgroundColor = DEFAULT_BACKGROUND_COLOR;
-						backgroundBold = DEFAULT_BACKGROUND_BOLD;
-						foregroundBold = DEFAULT_FOREGROUND_BOLD;
-					} else if (parameter.equals("2")) {
-						backgroundBold = true;
-						foregroundBold = true;
-					} else if (parameter.equals("22")) {
-						backgroundBold = false;
-						foregroundBold = false;
-					} else if ((parameter.startsWith("3") || parameter.startsWith("4")) && parameter.length() == 2) {
-						int color = Integer.parseInt(parameter.substring(1));
-						if (parameter.startsWith("3")) {
-							foregroundColor = color;
-						} else if (parameter.startsWith("4")) {
-							backgroundColor = color;
+					} else if (parameter >= 40 && parameter <= 47) {
+						backgroundColor = parameter - 40;
+					} else if (parameter == 48) {
+						int code = parseExtendedColor(seq, i, count);
+						if (code != -1) {
+							backgroundColor = code;
 						}
+						i += extendedColorLength(seq, i);
+					} else if (parameter == 49) {
+						backgroundColor = DEFAULT_BACKGROUND_COLOR;
+					} else if (parameter >= 90 && parameter <= 97) {
+						foregroundColor = parameter - 90 + SgrColor.NORMAL_COLORS;
+					} else if (parameter >= 100 && parameter <= 107) {
+						backgroundColor = parameter - 100 + SgrColor.NORMAL_COLORS;
 					}
 				}
 				break;
@@ -200,50 +251,139 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 			}
 		}
 
-		@Override
-		public void parsedString(String str) {
-			for (char ch : str.toCharArray()) {
-				switch (ch) {
-				case '\0':
-					continue;
-				case '\r':
-					cursorColumn = 0;
-					continue;
-				case '\n':
-					cursorColumn = 0;
-					cursorRow++;
-					continue;
-				case '\t':
-					while ((++cursorColumn % TAB_WIDTH) != 0);
-					continue;
-				case 127:
-					if (cursorColumn > 0) {
-						cells[cursorRow][--cursorColumn] = null;
-					}
-					continue;
-				case 7:
-					bellStrategy.soundBell();
-					continue;
+		/**
+		 * Parses the color which follows an SGR {@code 38} or {@code 48}
+		 * parameter, which is either {@code 5;n} for a palette color or
+		 * {@code 2;r;g;b} for an RGB color.
+		 * @param seq The control sequence.
+		 * @param index The index of the {@code 38} or {@code 48} parameter.
+		 * @param count The number of parameters.
+		 * @return The color code, or {@code -1} if the color is missing or
+		 * invalid.
+		 */
+		private int parseExtendedColor(AnsiControlSequence seq, int index, int count) {
+			int type = seq.getParameter(index + 1, -1);
+			if (type == 5 && index + 2 < count) {
+				int color = seq.getParameter(index + 2, 0);
+				return color < Palette.SIZE ? color : -1;
+			} else if (type == 2 && index + 4 < count) {
+				int red = seq.getParameter(index + 2, 0);
+				int green = seq.getParameter(index + 3, 0);
+				int blue = seq.getParameter(index + 4, 0);
+				if (red > 255 || green > 255 || blue > 255) {
+					return -1;
 				}
+				return SgrColor.rgb(red, green, blue);
+			}
+			return -1;
+		}
+
+		/**
+		 * Gets the number of parameters which follow an SGR {@code 38} or
+		 * {@code 48} parameter and belong to it.
+		 * @param seq The control sequence.
+		 * @param index The index of the {@code 38} or {@code 48} parameter.
+		 * @return The number of parameters to skip.
+		 */
+		private int extendedColorLength(AnsiControlSequence seq, int index) {
+			switch (seq.getParameter(index + 1, -1)) {
+			case 5:
+				return 2;
+			case 2:
+				return 4;
+			default:
+				/* the meaning of the remaining parameters is unknown */
+				return AnsiControlSequence.MAX_PARAMETERS;
+			}
+		}
+
+		@Override
+		public void parsedText(char[] text, int offset, int length) {
+			if (trace != null) {
+				trace.recordText(length);
+			}
+			if (columns == 0) {
+				/* there is nowhere to put the text */
+				return;
+			}
+			int back = backgroundBold ? SgrColor.brighten(backgroundColor) : backgroundColor;
+			int fore = foregroundBold ? SgrColor.brighten(foregroundColor) : foregroundColor;
 
+			int end = offset + length;
+			while (offset < end) {
 				if (cursorColumn >= columns) {
 					cursorColumn = 0;
-					cursorRow++;
+					if (!scrollMargins()) {
+						cursorRow++;
+					}
 				}
 
 				if (cursorRow >= bufferSize) {
-					for (int i = 1; i < bufferSize; i++) {
-						System.arraycopy(cells[i], 0, cells[i - 1], 0, columns);
-					}
-					for (int i = 0; i < columns; i++) {
-						cells[bufferSize - 1][i] = null;
-					}
+					cells.scroll();
+					damage.scroll(0, bufferSize, 1);
+					metrics.scrolled();
 					cursorRow--;
 				}
 
-				Color back = backgroundBold ? SgrColor.COLOR_BRIGHT[backgroundColor] : SgrColor.COLOR_NORMAL[backgroundColor];
-				Color fore = foregroundBold ? SgrColor.COLOR_BRIGHT[foregroundColor] : SgrColor.COLOR_NORMAL[foregroundColor];
-				cells[cursorRow][cursorColumn++] = new TerminalCell(ch, back, fore);
+				int count = Math.min(end - offset, columns - cursorColumn);
+				cells.write(cursorColumn, cursorRow, text, offset, count, back, fore, attributes);
+				metrics.cellsWritten(count);
+				damage.damage(cursorRow, cursorColumn, cursorColumn + count);
+				cursorColumn += count;
+				offset += count;
+			}
+		}
+
+		/**
+		 * Scrolls the rows between the margins up by one row if the margins
+		 * are not the whole screen and the cursor is on the bottom margin,
+		 * as a line feed does.
+		 * @return {@code true} if the rows were scrolled, {@code false} if
+		 * the line feed should be handled normally.
+		 */
+		private boolean scrollMargins() {
+			if (cursorRow != scrollBottom - 1 || (scrollTop == 0 && scrollBottom == rows)) {
+				return false;
+			}
+			scroll(0, scrollTop, columns, scrollBottom - scrollTop, 1);
+			metrics.scrolled();
+			return true;
+		}
+
+		@Override
+		public void parsedControlCharacter(char character) {
+			if (trace != null) {
+				trace.recordControl(character);
+			}
+			switch (character) {
+			case '\r':
+				cursorColumn = 0;
+				break;
+			case '\n':
+				cursorColumn = 0;
+				if (scrollMargins()) {
+					break;
+				} else if (cursorRow >= bufferSize) {
+					/* the cursor is already waiting below the last row */
+					cells.scroll();
+					damage.scroll(0, bufferSize, 1);
+					metrics.scrolled();
+				} else {
+					cursorRow++;
+				}
+				break;
+			case '\t':
+				while ((++cursorColumn % TAB_WIDTH) != 0);
+				break;
+			case 127:
+				if (cursorColumn > 0) {
+					cursorColumn--;
+					erase(cursorRow, cursorColumn, cursorColumn + 1);
+				}
+				break;
+			case 7:
+				bellStrategy.soundBell();
+				break;
 			}
 		}
 
@@ -274,6 +414,34 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 	 */
 	private static final boolean DEFAULT_BACKGROUND_BOLD = false;
 
+	/**
+	 * The changes which SGR parameters below {@code 30} make to the current
+	 * attributes, indexed by parameter. The flags to set are in the lowest
+	 * byte and the flags to clear are in the byte above it.
+	 */
+	private static final int[] SGR_ATTRIBUTES = new int[30];
+
+	static {
+		SGR_ATTRIBUTES[0] = TerminalCell.ATTRIBUTE_MASK << 8;
+		SGR_ATTRIBUTES[1] = TerminalCell.BOLD;
+		SGR_ATTRIBUTES[2] = TerminalCell.FAINT;
+		SGR_ATTRIBUTES[3] = TerminalCell.ITALIC;
+		SGR_ATTRIBUTES[4] = TerminalCell.UNDERLINE;
+		SGR_ATTRIBUTES[5] = TerminalCell.BLINK;
+		SGR_ATTRIBUTES[6] = TerminalCell.BLINK;
+		SGR_ATTRIBUTES[7] = TerminalCell.INVERSE;
+		SGR_ATTRIBUTES[8] = TerminalCell.CONCEAL;
+		SGR_ATTRIBUTES[9] = TerminalCell.STRIKETHROUGH;
+		SGR_ATTRIBUTES[21] = TerminalCell.UNDERLINE;
+		SGR_ATTRIBUTES[22] = (TerminalCell.BOLD | TerminalCell.FAINT) << 8;
+		SGR_ATTRIBUTES[23] = TerminalCell.ITALIC << 8;
+		SGR_ATTRIBUTES[24] = TerminalCell.UNDERLINE << 8;
+		SGR_ATTRIBUTES[25] = TerminalCell.BLINK << 8;
+		SGR_ATTRIBUTES[27] = TerminalCell.INVERSE << 8;
+		SGR_ATTRIBUTES[28] = TerminalCell.CONCEAL << 8;
+		SGR_ATTRIBUTES[29] = TerminalCell.STRIKETHROUGH << 8;
+	}
+
 	/**
 	 * The default foreground color.
 	 */
@@ -284,25 +452,76 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 	 */
 	private static final int DEFAULT_BACKGROUND_COLOR = 0;
 
+	/**
+	 * The maximum number of characters which are parsed while holding the
+	 * lock.
+	 */
+	private static final int PRINT_CHUNK_SIZE = 4096;
+
+	/**
+	 * The lock which guards the state of the model. It is fair so that a
+	 * reader waiting for it is not starved by a thread printing lots of
+	 * output.
+	 */
+	private final ReentrantLock lock = new ReentrantLock(true);
+
+	/**
+	 * The buffer which each chunk of printed text is copied into before it is
+	 * parsed. It is guarded by the lock.
+	 */
+	private final char[] printBuffer = new char[PRINT_CHUNK_SIZE];
+
+	/**
+	 * The buffer which bytes are copied into from a {@link ByteBuffer} without
+	 * a backing array before they are decoded. It is guarded by the lock.
+	 */
+	private final byte[] byteBuffer = new byte[PRINT_CHUNK_SIZE - 1];
+
 	/**
 	 * The ANSI control sequence listener.
 	 */
 	private final AnsiControlSequenceListener listener = this.new Vt100Listener();
 
 	/**
-	 * The ANSI control sequence parser.
+	 * The input context used by the print methods of the model itself.
 	 */
-	private final AnsiControlSequenceParser parser = new AnsiControlSequenceParser(listener);
+	private final InputContext input = new InputContext(this, listener);
 
 	/**
 	 * The current bell strategy.
 	 */
-	private BellStrategy bellStrategy = new NopBellStrategy();
+	private volatile BellStrategy bellStrategy = new NopBellStrategy();
+
+	/**
+	 * The current metrics sink.
+	 */
+	private volatile MetricsSink metrics = new NopMetricsSink();
 
 	/**
-	 * The array of cells.
+	 * The trace of parsed events, or {@code null} if tracing is disabled. It
+	 * is guarded by the lock.
 	 */
-	private TerminalCell[][] cells;
+	private SequenceTrace trace;
+
+	/**
+	 * The palette, which is only changed while the lock is held.
+	 */
+	private volatile Palette palette = Palette.DEFAULT;
+
+	/**
+	 * The type of cell storage.
+	 */
+	private final CellStorage storage;
+
+	/**
+	 * The cell buffer.
+	 */
+	private CellBuffer cells;
+
+	/**
+	 * The damage tracker.
+	 */
+	private DamageTracker damage;
 
 	/**
 	 * The number of columns.
@@ -319,6 +538,16 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 	 */
 	private int bufferSize;
 
+	/**
+	 * The first row within the scroll margins (inclusive).
+	 */
+	private int scrollTop;
+
+	/**
+	 * The last row within the scroll margins (exclusive).
+	 */
+	private int scrollBottom;
+
 	/**
 	 * The cursor row.
 	 */
@@ -340,12 +569,20 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 	private boolean backgroundBold = DEFAULT_BACKGROUND_BOLD;
 
 	/**
-	 * The current foreground color.
+	 * The current attribute flags, as accepted by
+	 * {@link TerminalCell#getAttributes()}.
+	 */
+	private int attributes = 0;
+
+	/**
+	 * The current foreground color code, as accepted by
+	 * {@link SgrColor#getColor(int)}.
 	 */
 	private int foregroundColor = DEFAULT_FOREGROUND_COLOR;
 
 	/**
-	 * The current background color.
+	 * The current background color code, as accepted by
+	 * {@link SgrColor#getColor(int)}.
 	 */
 	private int backgroundColor = DEFAULT_BACKGROUND_COLOR;
 
@@ -379,6 +616,25 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 	 * negative, or if the buffer size is less than the number of rows.
 	 */
 	public Vt100TerminalModel(int columns, int rows, int bufferSize) {
+		this(columns, rows, bufferSize, CellStorage.OBJECT);
+	}
+
+	/**
+	 * Creates the terminal model with the specified number of columns and
+	 * rows, the specified buffer size and the specified type of cell storage.
+	 * @param columns The number of columns.
+	 * @param rows The number of rows.
+	 * @param bufferSize The buffer size.
+	 * @param storage The type of cell storage.
+	 * @throws IllegalArgumentException if the number of rows or columns is
+	 * negative, or if the buffer size is less than the number of rows.
+	 * @throws NullPointerException if the type of cell storage is
+	 * {@code null}.
+	 */
+	public Vt100TerminalModel(int columns, int rows, int bufferSize, CellStorage storage) {
+		if (storage == null) {
+			throw new NullPointerException("storage");
+		}
 		if (columns < 0 || rows < 0 || bufferSize < 0) {
 			throw new IllegalArgumentException("Zero or positive values only allowed for columns, rows and buffer size.");
 		}
@@ -388,6 +644,7 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 		this.columns = columns;
 		this.rows = rows;
 		this.bufferSize = bufferSize;
+		this.storage = storage;
 		init();
 	}
 
@@ -395,12 +652,182 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 	 * Initializes the terminal model.
 	 */
 	private void init() {
-		cells = new TerminalCell[bufferSize][columns];
+		cells = storage.createBuffer(columns, bufferSize);
+		cells.setPalette(palette);
+		damage = new DamageTracker(columns, bufferSize);
+		scrollTop = 0;
+		scrollBottom = rows;
+	}
+
+	/**
+	 * Empties a range of cells within a row.
+	 * @param row The row.
+	 * @param startColumn The first column to empty (inclusive).
+	 * @param endColumn The last column to empty (exclusive).
+	 */
+	private void erase(int row, int startColumn, int endColumn) {
+		cells.erase(row, startColumn, endColumn);
+		damage.damage(row, startColumn, endColumn);
+	}
+
+	/**
+	 * Sets every cell in a rectangular region to the same cell. The caller
+	 * must hold the lock and check the bounds.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @param cell The cell, or {@code null} to empty the region.
+	 */
+	private void fill(int column, int row, int width, int height, TerminalCell cell) {
+		if (width == 0) {
+			return;
+		}
+		for (int y = row; y < row + height; y++) {
+			cells.fill(y, column, column + width, cell);
+			damage.damage(y, column, column + width);
+		}
+	}
+
+	/**
+	 * Copies a rectangular region to another position, which may overlap it.
+	 * The caller must hold the lock and check the bounds.
+	 * @param column The first column of the source.
+	 * @param row The first row of the source.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @param destinationColumn The first column of the destination.
+	 * @param destinationRow The first row of the destination.
+	 */
+	private void copy(int column, int row, int width, int height, int destinationColumn, int destinationRow) {
+		if (width == 0) {
+			return;
+		}
+		for (int i = 0; i < height; i++) {
+			/* copy the rows in the opposite direction to the move */
+			int y = destinationRow > row ? height - 1 - i : i;
+			cells.copy(row + y, column, destinationRow + y, destinationColumn, width);
+			damage.damage(destinationRow + y, destinationColumn, destinationColumn + width);
+		}
+	}
+
+	/**
+	 * Scrolls the cells in a rectangular region up or down. The caller must
+	 * hold the lock and check the bounds. If the region spans every column,
+	 * the rows are rotated rather than copied.
+	 * @param column The first column.
+	 * @param row The first row.
+	 * @param width The number of columns.
+	 * @param height The number of rows.
+	 * @param n The number of rows to scroll by: positive to move the cells
+	 * up, negative to move them down.
+	 */
+	private void scroll(int column, int row, int width, int height, int n) {
+		int distance = Math.abs(n);
+		if (distance >= height) {
+			fill(column, row, width, height, null);
+		} else if (n != 0 && column == 0 && width == columns) {
+			cells.scroll(row, height, n);
+			damage.scroll(row, height, n);
+		} else if (n > 0) {
+			copy(column, row + n, width, height - n, column, row);
+			fill(column, row + height - n, width, n, null);
+		} else if (n < 0) {
+			copy(column, row, width, height - distance, column, row + distance);
+			fill(column, row, width, distance, null);
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			fill(0, 0, columns, rows, null);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public TerminalCell[] getRow(int row, TerminalCell[] destination) {
+		if (row < 0 || row >= bufferSize) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (destination == null || destination.length < columns) {
+			destination = new TerminalCell[columns];
+		}
+		lock.lock();
+		try {
+			cells.read(row, destination);
+		} finally {
+			lock.unlock();
+		}
+		return destination;
+	}
+
+	@Override
+	public void fillRegion(int column, int row, int width, int height, TerminalCell cell) {
+		checkRegion(column, row, width, height);
+		lock.lock();
+		try {
+			fill(column, row, width, height, cell);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clearRegion(int column, int row, int width, int height) {
+		checkRegion(column, row, width, height);
+		lock.lock();
+		try {
+			fill(column, row, width, height, null);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void copyRegion(int column, int row, int width, int height, int destinationColumn, int destinationRow) {
+		checkRegion(column, row, width, height);
+		checkRegion(destinationColumn, destinationRow, width, height);
+		lock.lock();
+		try {
+			copy(column, row, width, height, destinationColumn, destinationRow);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void scrollRegion(int column, int row, int width, int height, int n) {
+		checkRegion(column, row, width, height);
+		lock.lock();
+		try {
+			scroll(column, row, width, height, n);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean hasScrollMargins() {
+		lock.lock();
+		try {
+			return scrollTop != 0 || scrollBottom != rows;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public int getCursorRow() {
-		return cursorRow;
+		lock.lock();
+		try {
+			return cursorRow;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -408,12 +835,22 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 		if (row < 0 || row >= bufferSize) {
 			throw new IllegalArgumentException("row out of range");
 		}
-		cursorRow = row;
+		lock.lock();
+		try {
+			cursorRow = row;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public int getCursorColumn() {
-		return cursorColumn;
+		lock.lock();
+		try {
+			return cursorColumn;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -421,7 +858,12 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 		if (column < 0 || column >= columns) {
 			throw new IllegalArgumentException("column out of range");
 		}
-		cursorColumn = column;
+		lock.lock();
+		try {
+			cursorColumn = column;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -429,7 +871,12 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 		if (column < 0 || row < 0 || column >= columns || row >= bufferSize) {
 			throw new IndexOutOfBoundsException();
 		}
-		return cells[row][column];
+		lock.lock();
+		try {
+			return cells.get(column, row);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -437,15 +884,230 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 		if (column < 0 || row < 0 || column >= columns || row >= bufferSize) {
 			throw new IndexOutOfBoundsException();
 		}
-		cells[row][column] = cell;
+		lock.lock();
+		try {
+			cells.set(column, row, cell);
+			damage.damage(row, column, column + 1);
+		} finally {
+			lock.unlock();
+		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Long strings are processed in chunks, and the lock which guards the model
+	 * is released between chunks so that readers such as a renderer taking a
+	 * snapshot are not held up until the whole string has been processed. A
+	 * snapshot is therefore consistent with a whole number of chunks, rather
+	 * than with the whole string.
+	 */
 	@Override
 	public void print(String str) {
+		print(input, str);
+	}
+
+	/**
+	 * Prints a string with the specified input context.
+	 * @param context The input context.
+	 * @param str The string.
+	 * @throws NullPointerException if the string is {@code null}.
+	 */
+	void print(InputContext context, String str) {
 		if (str == null) {
 			throw new NullPointerException("str");
 		}
-		parser.parse(str);
+		AnsiControlSequenceParser parser = context.getParser();
+		int length = str.length();
+		for (int start = 0; start < length; start += PRINT_CHUNK_SIZE) {
+			int end = Math.min(start + PRINT_CHUNK_SIZE, length);
+			lock.lock();
+			try {
+				str.getChars(start, end, printBuffer, 0);
+				metrics.charactersPrinted(end - start);
+				parser.parse(printBuffer, 0, end - start);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Creates a new input context. Each context has its own parser state, so
+	 * output from several sources can be printed to the model in any
+	 * interleaving without a sequence from one source being broken up by
+	 * output from another.
+	 * @return The input context.
+	 */
+	public InputContext createInputContext() {
+		return new InputContext(this, listener);
+	}
+
+	/**
+	 * Checks if everything printed so far has been fully processed, that is,
+	 * the model is not part way through a control sequence, escape sequence
+	 * or multi-byte character. Input which is split at such a point may be
+	 * processed in any way without affecting how the rest of it is
+	 * interpreted.
+	 * @return {@code true} if so, {@code false} if not.
+	 */
+	public boolean isAtSequenceBoundary() {
+		return isAtSequenceBoundary(input);
+	}
+
+	/**
+	 * Checks if an input context is at a sequence boundary.
+	 * @param context The input context.
+	 * @return {@code true} if so, {@code false} if not.
+	 * @see #isAtSequenceBoundary()
+	 */
+	boolean isAtSequenceBoundary(InputContext context) {
+		lock.lock();
+		try {
+			return context.getParser().isGround() && context.getDecoder().isIdle();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Prints UTF-8 encoded bytes to the terminal. The bytes are decoded
+	 * incrementally, so a character may be split between two calls.
+	 * <p>
+	 * Bytes in the range {@code 0x80-0x9F} which are not part of a multi-byte
+	 * character are treated as 8-bit C1 control characters.
+	 * @param bytes The array which contains the bytes.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @throws NullPointerException if the array is {@code null}.
+	 * @throws IndexOutOfBoundsException if the range is not within the array.
+	 */
+	public void print(byte[] bytes, int offset, int length) {
+		print(input, bytes, offset, length);
+	}
+
+	/**
+	 * Prints UTF-8 encoded bytes with the specified input context.
+	 * @param context The input context.
+	 * @param bytes The array which contains the bytes.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @throws NullPointerException if the array is {@code null}.
+	 * @throws IndexOutOfBoundsException if the range is not within the array.
+	 */
+	void print(InputContext context, byte[] bytes, int offset, int length) {
+		if (bytes == null) {
+			throw new NullPointerException("bytes");
+		}
+		if (offset < 0 || length < 0 || offset + length > bytes.length || offset + length < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		AnsiControlSequenceParser parser = context.getParser();
+		Utf8Decoder decoder = context.getDecoder();
+		for (int start = offset, end = offset + length; start < end; start += PRINT_CHUNK_SIZE - 1) {
+			int count = Math.min(PRINT_CHUNK_SIZE - 1, end - start);
+			lock.lock();
+			try {
+				int decoded = decoder.decode(bytes, start, count, printBuffer, 0);
+				metrics.bytesPrinted(count);
+				metrics.charactersPrinted(decoded);
+				parser.parse(printBuffer, 0, decoded);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Prints the remaining UTF-8 encoded bytes in a buffer to the terminal,
+	 * advancing its position to its limit.
+	 * @param buffer The buffer.
+	 * @throws NullPointerException if the buffer is {@code null}.
+	 * @see #print(byte[], int, int)
+	 */
+	public void print(ByteBuffer buffer) {
+		print(input, buffer);
+	}
+
+	/**
+	 * Prints the remaining UTF-8 encoded bytes in a buffer with the specified
+	 * input context.
+	 * @param context The input context.
+	 * @param buffer The buffer.
+	 * @throws NullPointerException if the buffer is {@code null}.
+	 */
+	void print(InputContext context, ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException("buffer");
+		}
+		AnsiControlSequenceParser parser = context.getParser();
+		Utf8Decoder decoder = context.getDecoder();
+		if (buffer.hasArray()) {
+			print(context, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+		while (buffer.hasRemaining()) {
+			int count = Math.min(PRINT_CHUNK_SIZE - 1, buffer.remaining());
+			lock.lock();
+			try {
+				buffer.get(byteBuffer, 0, count);
+				int decoded = decoder.decode(byteBuffer, 0, count, printBuffer, 0);
+				metrics.bytesPrinted(count);
+				metrics.charactersPrinted(decoded);
+				parser.parse(printBuffer, 0, decoded);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public void snapshot(int firstRow, int rows, TerminalSnapshot snapshot) {
+		if (firstRow < 0 || rows < 0 || firstRow + rows > bufferSize) {
+			throw new IndexOutOfBoundsException();
+		}
+		lock.lock();
+		try {
+			snapshot.reset(firstRow, rows, columns, cursorColumn, cursorRow);
+			for (int row = firstRow; row < firstRow + rows; row++) {
+				cells.read(row, snapshot.getRow(row));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<TerminalRegion> collectDamage() {
+		lock.lock();
+		try {
+			return damage.collect(cursorColumn, cursorRow);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<TerminalRegion> collectDamage(int firstRow, int rows, TerminalSnapshot snapshot) {
+		if (firstRow < 0 || rows < 0 || firstRow + rows > bufferSize) {
+			throw new IndexOutOfBoundsException();
+		}
+		lock.lock();
+		try {
+			snapshot(firstRow, rows, snapshot);
+			return damage.collect(cursorColumn, cursorRow);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the type of cell storage.
+	 * @return The type of cell storage.
+	 */
+	public CellStorage getStorage() {
+		return storage;
 	}
 
 	@Override
@@ -476,16 +1138,125 @@ public class Vt100TerminalModel extends AbstractTerminalModel {
 		this.bellStrategy = strategy;
 	}
 
+	/**
+	 * Gets the trace of parsed events.
+	 * @return The trace, or {@code null} if tracing is disabled.
+	 */
+	public SequenceTrace getTrace() {
+		lock.lock();
+		try {
+			return trace;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the trace which records every control sequence, run of text and
+	 * control character that is parsed. Tracing is disabled by default.
+	 * @param trace The trace, or {@code null} to disable tracing.
+	 */
+	public void setTrace(SequenceTrace trace) {
+		lock.lock();
+		try {
+			this.trace = trace;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the events in the trace, oldest first. The trace is copied while
+	 * the lock is held and formatted afterwards, so printing is only held up
+	 * for as long as the copy takes.
+	 * @param out The destination.
+	 * @return {@code true} if the trace was written, {@code false} if tracing
+	 * is disabled.
+	 * @throws IOException if an I/O error occurs.
+	 * @see SequenceTrace#dump(Appendable)
+	 */
+	public boolean dumpTrace(Appendable out) throws IOException {
+		SequenceTrace copy;
+		lock.lock();
+		try {
+			if (trace == null) {
+				return false;
+			}
+			copy = trace.copy();
+		} finally {
+			lock.unlock();
+		}
+		copy.dump(out);
+		return true;
+	}
+
+	/**
+	 * Gets the current metrics sink.
+	 * @return The current metrics sink.
+	 */
+	public MetricsSink getMetricsSink() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the metrics sink, which is told about the text printed, the control
+	 * sequences dispatched, the rows scrolled and the cells written. By
+	 * default a {@link NopMetricsSink} is used.
+	 * @param sink The new metrics sink.
+	 * @throws NullPointerException if the sink is {@code null}.
+	 */
+	public void setMetricsSink(MetricsSink sink) {
+		if (sink == null) {
+			throw new NullPointerException("sink");
+		}
+		this.metrics = sink;
+	}
+
+	/**
+	 * Gets the palette.
+	 * @return The palette.
+	 */
+	public Palette getPalette() {
+		return palette;
+	}
+
+	/**
+	 * Sets the palette, which changes the colors of every cell that was
+	 * printed with a palette color, including the default colors. With
+	 * {@link CellStorage#PACKED} storage this only takes time proportional to
+	 * the size of the palette, as cells refer to palette colors by index.
+	 * With {@link CellStorage#OBJECT} storage every cell has to be rewritten.
+	 * The whole buffer is marked as damaged, so a {@link
+	 * com.grahamedgecombe.jterminal.JTerminal} repaints it after
+	 * {@link com.grahamedgecombe.jterminal.JTerminal#modelChanged()} is
+	 * called.
+	 * @param palette The new palette.
+	 * @throws NullPointerException if the palette is {@code null}.
+	 */
+	public void setPalette(Palette palette) {
+		if (palette == null) {
+			throw new NullPointerException("palette");
+		}
+		lock.lock();
+		try {
+			cells.setPalette(palette);
+			this.palette = palette;
+			damage.damageAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	@Override
 	public Color getDefaultBackgroundColor() {
 		final int bg = DEFAULT_BACKGROUND_COLOR;
-		return DEFAULT_BACKGROUND_BOLD ? SgrColor.COLOR_BRIGHT[bg] : SgrColor.COLOR_NORMAL[bg];
+		return palette.getColor(DEFAULT_BACKGROUND_BOLD ? SgrColor.brighten(bg) : bg);
 	}
 
 	@Override
 	public Color getDefaultForegroundColor() {
 		final int fg = DEFAULT_FOREGROUND_COLOR;
-		return DEFAULT_FOREGROUND_BOLD ? SgrColor.COLOR_BRIGHT[fg] : SgrColor.COLOR_NORMAL[fg];
+		return palette.getColor(DEFAULT_FOREGROUND_BOLD ? SgrColor.brighten(fg) : fg);
 	}
 
 }
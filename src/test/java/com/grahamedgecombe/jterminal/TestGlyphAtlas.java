@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A test for the {@link GlyphAtlas} class.
+ * @author Graham Edgecombe
+ */
+public class TestGlyphAtlas {
+
+	/**
+	 * The glyph atlas.
+	 */
+	private GlyphAtlas atlas;
+
+	/**
+	 * The image glyphs are drawn to.
+	 */
+	private BufferedImage image;
+
+	/**
+	 * The graphics context used to draw to the image.
+	 */
+	private Graphics2D graphics;
+
+	/**
+	 * Sets up the atlas and the image.
+	 */
+	@Before
+	public void setUp() {
+		atlas = new GlyphAtlas(new Font("Monospaced", Font.PLAIN, 12), 8, 12, 2);
+		image = new BufferedImage(16, 12, BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	/**
+	 * Tests that glyphs are drawn in the right place and color.
+	 */
+	@Test
+	public void testDraw() {
+		atlas.draw(graphics, '#', Color.RED, 8, 0);
+
+		boolean drawn = false;
+		for (int y = 0; y < 12; y++) {
+			for (int x = 0; x < 16; x++) {
+				int rgb = image.getRGB(x, y) & 0xFFFFFF;
+				if (x < 8) {
+					assertEquals(0, rgb);
+				} else if (rgb != 0) {
+					assertEquals(0xFF0000, rgb);
+					drawn = true;
+				}
+			}
+		}
+		assertTrue(drawn);
+	}
+
+	/**
+	 * Tests that the least recently used glyph is evicted.
+	 */
+	@Test
+	public void testEviction() {
+		atlas.draw(graphics, 'a', Color.WHITE, 0, 0);
+		atlas.draw(graphics, 'a', Color.WHITE, 0, 0);
+		atlas.draw(graphics, 'a', Color.RED, 0, 0);
+		assertEquals(1, atlas.getHits());
+		assertEquals(2, atlas.getMisses());
+		assertEquals(2, atlas.size());
+
+		atlas.draw(graphics, 'a', Color.WHITE, 0, 0);
+		atlas.draw(graphics, 'b', Color.WHITE, 0, 0);
+		assertEquals(2, atlas.getHits());
+		assertEquals(3, atlas.getMisses());
+
+		atlas.draw(graphics, 'a', Color.WHITE, 0, 0);
+		atlas.draw(graphics, 'b', Color.WHITE, 0, 0);
+		assertEquals(4, atlas.getHits());
+
+		atlas.draw(graphics, 'a', Color.RED, 0, 0);
+		assertEquals(4, atlas.getMisses());
+		assertEquals(2, atlas.size());
+
+		atlas.draw(graphics, 'b', Color.WHITE, 0, 0);
+		assertEquals(5, atlas.getHits());
+		atlas.draw(graphics, 'a', Color.WHITE, 0, 0);
+		assertEquals(5, atlas.getMisses());
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A test for the {@link JTerminal} class.
+ * @author Graham Edgecombe
+ */
+public class TestJTerminal {
+
+	/**
+	 * Tests that moving the pixels of a scrolled region gives the same image
+	 * as drawing every cell again, and only draws the exposed row.
+	 * @throws InterruptedException if the thread is interrupted.
+	 * @throws InvocationTargetException if painting fails.
+	 */
+	@Test
+	public void testScroll() throws InterruptedException, InvocationTargetException {
+		Vt100TerminalModel model = new Vt100TerminalModel(80, 25, 25);
+		final JTerminal terminal = new JTerminal(model);
+		terminal.setGlyphCacheEnabled(true);
+		terminal.setSize(terminal.getPreferredSize());
+		terminal.doLayout();
+
+		terminal.print("header\u001B[25;1H\u001B[7mstatus\u001B[m\u001B[2;24r\u001B[2;1H");
+		for (int i = 0; i < 30; i++) {
+			terminal.println("line " + i);
+		}
+		final BufferedImage image = paint(terminal);
+
+		final long drawn = terminal.getGlyphCacheHits() + terminal.getGlyphCacheMisses();
+		terminal.println("line 30");
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				terminal.flush();
+				draw(terminal, image);
+			}
+		});
+		assertTrue(terminal.getGlyphCacheHits() + terminal.getGlyphCacheMisses() - drawn < 80);
+
+		JTerminal expected = new JTerminal(model);
+		expected.setSize(expected.getPreferredSize());
+		expected.doLayout();
+		assertImagesEqual(paint(expected), image);
+	}
+
+	/**
+	 * Tests that the terminal is painted correctly when the model scrolls
+	 * between the damage being flushed and the terminal being painted.
+	 * @throws InterruptedException if the thread is interrupted.
+	 * @throws InvocationTargetException if painting fails.
+	 */
+	@Test
+	public void testPrintBetweenFlushAndPaint() throws InterruptedException, InvocationTargetException {
+		Vt100TerminalModel model = new Vt100TerminalModel(80, 25, 25);
+		final JTerminal terminal = new JTerminal(model);
+		terminal.setSize(terminal.getPreferredSize());
+		terminal.doLayout();
+
+		terminal.print("\u001B[2;24r");
+		for (int i = 0; i < 30; i++) {
+			terminal.println("line " + i);
+		}
+		final BufferedImage image = paint(terminal);
+
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				terminal.print("\u001B[11;1HCHANGED");
+				terminal.flush();
+				terminal.print("\u001B[24;1H\r\nnext\r\nlast");
+				draw(terminal, image);
+				terminal.flush();
+				draw(terminal, image);
+			}
+		});
+
+		JTerminal expected = new JTerminal(model);
+		expected.setSize(expected.getPreferredSize());
+		expected.doLayout();
+		assertImagesEqual(paint(expected), image);
+	}
+
+	/**
+	 * Tests that faint text is drawn halfway between its foreground and
+	 * background colors.
+	 * @throws InterruptedException if the thread is interrupted.
+	 * @throws InvocationTargetException if painting fails.
+	 */
+	@Test
+	public void testFaint() throws InterruptedException, InvocationTargetException {
+		JTerminal terminal = new JTerminal(new Vt100TerminalModel(80, 25, 25));
+		terminal.setSize(terminal.getPreferredSize());
+		terminal.doLayout();
+
+		/* an underlined space draws a line in the foreground color */
+		terminal.print("\u001B[4m \u001B[2m \u001B[2m ");
+		BufferedImage image = paint(terminal);
+
+		Color fore = terminal.getModel().getDefaultForegroundColor();
+		Color back = terminal.getModel().getDefaultBackgroundColor();
+		Color faint = new Color((fore.getRed() + back.getRed()) / 2, (fore.getGreen() + back.getGreen()) / 2, (fore.getBlue() + back.getBlue()) / 2);
+		assertEquals(fore.getRGB(), image.getRGB(0, 11));
+		assertEquals(faint.getRGB(), image.getRGB(8, 11));
+		assertEquals(faint.getRGB(), image.getRGB(16, 11));
+	}
+
+	/**
+	 * Paints a terminal into a new image on the event dispatch thread, after
+	 * repainting any damage to its model.
+	 * @param terminal The terminal.
+	 * @return The image.
+	 * @throws InterruptedException if the thread is interrupted.
+	 * @throws InvocationTargetException if painting fails.
+	 */
+	private static BufferedImage paint(final JTerminal terminal) throws InterruptedException, InvocationTargetException {
+		final BufferedImage image = new BufferedImage(terminal.getWidth(), terminal.getHeight(), BufferedImage.TYPE_INT_RGB);
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				terminal.flush();
+				draw(terminal, image);
+			}
+		});
+		return image;
+	}
+
+	/**
+	 * Paints a terminal into an image.
+	 * @param terminal The terminal.
+	 * @param image The image.
+	 */
+	private static void draw(JTerminal terminal, BufferedImage image) {
+		Graphics2D g = image.createGraphics();
+		try {
+			terminal.paint(g);
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Checks that two images have the same pixels.
+	 * @param expected The expected image.
+	 * @param actual The actual image.
+	 */
+	private static void assertImagesEqual(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+import com.grahamedgecombe.jterminal.TerminalCell;
+import com.grahamedgecombe.jterminal.metrics.TerminalMetrics;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A test for the {@link MultiProducerInputQueue} class.
+ * @author Graham Edgecombe
+ */
+public class TestMultiProducerInputQueue {
+
+	/**
+	 * The number of lines written by each producer.
+	 */
+	private static final int LINES = 500;
+
+	/**
+	 * Tests that output from several threads is interleaved without breaking
+	 * up the control sequences written by each thread.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testProducers() throws InterruptedException {
+		final int producers = 4;
+		Vt100TerminalModel model = new Vt100TerminalModel(80, 25, producers * LINES + 1);
+		final MultiProducerInputQueue queue = new MultiProducerInputQueue(model);
+
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < producers; i++) {
+			final MultiProducerInputQueue.Producer producer = queue.createProducer();
+			final char digit = (char) ('1' + i);
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < LINES; j++) {
+						/* split the SGR sequence between two writes */
+						producer.write("\u001B[3" + digit);
+						byte[] line = ("m" + digit + digit + digit + "\r\n").getBytes();
+						producer.write(line, 0, line.length);
+					}
+				}
+			};
+		}
+
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				queue.run();
+			}
+		};
+		consumer.start();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		queue.close();
+		consumer.join();
+
+		assertEquals(producers * LINES * 2, queue.getWrittenChunks());
+		assertEquals(0, queue.getDepth());
+		assertEquals(producers * LINES, model.getCursorRow());
+
+		int[] counts = new int[producers];
+		for (int row = 0; row < producers * LINES; row++) {
+			TerminalCell cell = model.getCell(0, row);
+			int index = cell.getCharacter() - '1';
+			counts[index]++;
+
+			Color color = colorOf(cell.getCharacter());
+			for (int column = 0; column < 3; column++) {
+				cell = model.getCell(column, row);
+				assertEquals('1' + index, cell.getCharacter());
+				assertEquals(color, cell.getForegroundColor());
+			}
+			assertNull(model.getCell(3, row));
+		}
+		for (int count : counts) {
+			assertEquals(LINES, count);
+		}
+	}
+
+	/**
+	 * Tests that writing to a closed queue fails.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testClosed() {
+		MultiProducerInputQueue queue = new MultiProducerInputQueue(new Vt100TerminalModel());
+		MultiProducerInputQueue.Producer producer = queue.createProducer();
+		producer.write("a");
+		queue.close();
+		assertEquals(1, queue.drain());
+		producer.write("b");
+	}
+
+	/**
+	 * Tests that every write which succeeds while the queue is being closed is
+	 * printed by the consumer before it stops.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testCloseWhileWriting() throws InterruptedException {
+		final int producers = 4;
+		for (int round = 0; round < 500; round++) {
+			Vt100TerminalModel model = new Vt100TerminalModel(80, 25);
+			TerminalMetrics metrics = new TerminalMetrics();
+			model.setMetricsSink(metrics);
+			final MultiProducerInputQueue queue = new MultiProducerInputQueue(model);
+			final int[] writes = new int[producers];
+
+			Thread[] threads = new Thread[producers];
+			for (int i = 0; i < producers; i++) {
+				final MultiProducerInputQueue.Producer producer = queue.createProducer();
+				final int index = i;
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int j = 0; j < 1000; j++) {
+								producer.write("a");
+								writes[index]++;
+							}
+						} catch (IllegalStateException ex) {
+							/* the queue has been closed */
+						}
+					}
+				};
+				threads[i].start();
+			}
+
+			Thread consumer = new Thread() {
+				@Override
+				public void run() {
+					queue.run();
+				}
+			};
+			consumer.start();
+			Thread.yield();
+			queue.close();
+			consumer.join();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			long total = 0;
+			for (int count : writes) {
+				total += count;
+			}
+			assertEquals(total, queue.getWrittenChunks());
+			assertEquals(total, metrics.getCharactersPrinted());
+			assertEquals(0, queue.getDepth());
+		}
+	}
+
+	/**
+	 * Gets the foreground color which a model uses for the SGR sequence
+	 * {@code 3n}.
+	 * @param digit The digit {@code n}.
+	 * @return The color.
+	 */
+	private static Color colorOf(char digit) {
+		Vt100TerminalModel model = new Vt100TerminalModel();
+		model.print("\u001B[3" + digit + "mX");
+		return model.getCell(0, 0).getForegroundColor();
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import static org.junit.Assert.*;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.grahamedgecombe.jterminal.TerminalCell;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A test for the {@link TerminalInputQueue} class.
+ * @author Graham Edgecombe
+ */
+public class TestTerminalInputQueue {
+
+	/**
+	 * Tests that the producer is paused at the high watermark and that every
+	 * byte still reaches the model.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testWatermarks() throws InterruptedException {
+		Vt100TerminalModel model = new Vt100TerminalModel(100, 25, 100);
+		final TerminalInputQueue queue = new TerminalInputQueue(model, 1000, 800, 200);
+		final byte[] line = new byte[100];
+		for (int i = 0; i < line.length; i++) {
+			line[i] = (byte) (i == 99 ? '\n' : 'a' + i % 26);
+		}
+
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 50; i++) {
+						queue.write(line, 0, line.length);
+					}
+				} catch (InterruptedException ex) {
+					/* ignore */
+				}
+				queue.close();
+			}
+		};
+		producer.start();
+		while (!queue.isPaused() && producer.isAlive()) {
+			Thread.sleep(1);
+		}
+		assertTrue(queue.getDepth() >= 800);
+		assertTrue(queue.getDepth() <= queue.getCapacity());
+
+		queue.run();
+		producer.join();
+
+		assertEquals(0, queue.getDepth());
+		assertTrue(queue.getPauseCount() >= 1);
+		assertTrue(queue.getPausedTime(TimeUnit.NANOSECONDS) > 0);
+		assertEquals(50, model.getCursorRow());
+		assertEquals('a', model.getCell(0, 49).getCharacter());
+		assertEquals('u', model.getCell(98, 49).getCharacter());
+
+		try {
+			queue.write(line, 0, 1);
+			fail();
+		} catch (IllegalStateException ex) {
+			/* expected */
+		}
+	}
+
+	/**
+	 * Tests that fast-forwarding leaves the model in the same state as printing
+	 * every byte would have done.
+	 * @throws Exception if an error occurs.
+	 */
+	@Test
+	public void testFastForward() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			for (int j = 0; j < i % 130; j++) {
+				text.append(j % 17 == 0 ? '\u00E9' : j % 23 == 0 ? '\t' : (char) ('a' + (i + j) % 26));
+			}
+			text.append(i % 3 == 0 ? "\n" : "\r\n");
+		}
+		text.append("\u001B[31mred\r\n\r\nend");
+
+		assertFastForward("", text.toString(), true);
+		assertFastForward("", "\u001B[32m" + text, false);
+		assertFastForward("", "x\u0085" + text, false);
+
+		/* a line feed at the bottom margin only scrolls between the margins */
+		assertFastForward("\u001B[2;8r", text.toString(), false);
+		assertFastForward("\u001B[2;8r\u001B[r", text.toString(), true);
+	}
+
+	/**
+	 * Prints some text to one model directly and to another through a queue
+	 * with fast-forwarding enabled, then checks that both models are the
+	 * same. The queue is primed with carriage returns first, so that the text
+	 * wraps around the end of it.
+	 * @param setup Some text which is printed to both models before the
+	 * queue is fast-forwarded.
+	 * @param text The text.
+	 * @param skipped {@code true} if some of the text is expected to be
+	 * skipped, {@code false} if not.
+	 * @throws UnsupportedEncodingException if UTF-8 is not supported.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	private static void assertFastForward(String setup, String text, boolean skipped) throws UnsupportedEncodingException, InterruptedException {
+		byte[] bytes = text.getBytes("UTF-8");
+		Vt100TerminalModel expected = new Vt100TerminalModel(80, 10, 30);
+		expected.print(setup);
+		expected.print(text);
+
+		Vt100TerminalModel actual = new Vt100TerminalModel(80, 10, 30);
+		actual.print(setup);
+		TerminalInputQueue queue = new TerminalInputQueue(actual, bytes.length, bytes.length, 0);
+		byte[] returns = new byte[bytes.length / 3];
+		Arrays.fill(returns, (byte) '\r');
+		queue.write(returns, 0, returns.length);
+		assertEquals(returns.length, queue.drain());
+
+		queue.setFastForward(true);
+		queue.write(bytes, 0, bytes.length);
+		queue.close();
+		queue.run();
+
+		assertEquals(skipped, queue.getSkippedBytes() > 0);
+		assertEquals(expected.getCursorRow(), actual.getCursorRow());
+		assertEquals(expected.getCursorColumn(), actual.getCursorColumn());
+		for (int row = 0; row < expected.getBufferSize(); row++) {
+			for (int column = 0; column < expected.getColumns(); column++) {
+				TerminalCell expectedCell = expected.getCell(column, row);
+				TerminalCell actualCell = actual.getCell(column, row);
+				if (expectedCell == null) {
+					assertNull(actualCell);
+				} else {
+					assertEquals(expectedCell.getCharacter(), actualCell.getCharacter());
+					assertEquals(expectedCell.getForegroundColor(), actualCell.getForegroundColor());
+					assertEquals(expectedCell.getBackgroundColor(), actualCell.getBackgroundColor());
+				}
+			}
+		}
+	}
+
+}
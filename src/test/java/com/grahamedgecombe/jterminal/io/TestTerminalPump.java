@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A test for the {@link TerminalPump} and {@link TerminalMultiplexer}
+ * classes.
+ * @author Graham Edgecombe
+ */
+public class TestTerminalPump {
+
+	/**
+	 * A listener which counts batches and records when the pump closes.
+	 * @author Graham Edgecombe
+	 */
+	private static final class CountingListener implements PumpListener {
+
+		/**
+		 * The number of batches.
+		 */
+		private final AtomicInteger batches = new AtomicInteger();
+
+		/**
+		 * The number of times the pump was closed.
+		 */
+		private final AtomicInteger closes = new AtomicInteger();
+
+		/**
+		 * A latch which is released when the pump is closed.
+		 */
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		@Override
+		public void printed(TerminalPump pump) {
+			batches.incrementAndGet();
+		}
+
+		@Override
+		public void closed(TerminalPump pump, IOException cause) {
+			assertNull(cause);
+			closes.incrementAndGet();
+			closed.countDown();
+		}
+
+	}
+
+	/**
+	 * Tests a pump on a blocking channel.
+	 */
+	@Test
+	public void testRun() {
+		byte[] bytes = new byte[10000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i % 100 == 99 ? '\n' : 'a' + i % 26);
+		}
+
+		Vt100TerminalModel model = new Vt100TerminalModel(100, 25, 200);
+		CountingListener listener = new CountingListener();
+		TerminalPump pump = new TerminalPump(Channels.newChannel(new ByteArrayInputStream(bytes)), model, listener, 4096);
+		pump.run();
+
+		assertTrue(pump.isClosed());
+		assertEquals(3, listener.batches.get());
+		assertEquals(1, listener.closes.get());
+		assertEquals('a', model.getCell(0, 0).getCharacter());
+		assertEquals(100, model.getCursorRow());
+
+		pump.close();
+		assertEquals(1, listener.closes.get());
+	}
+
+	/**
+	 * Tests several pumps sharing a multiplexer.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testMultiplexer() throws IOException, InterruptedException {
+		TerminalMultiplexer multiplexer = new TerminalMultiplexer(1024);
+
+		Pipe[] pipes = new Pipe[8];
+		Vt100TerminalModel[] models = new Vt100TerminalModel[pipes.length];
+		CountingListener[] listeners = new CountingListener[pipes.length];
+		for (int i = 0; i < pipes.length; i++) {
+			pipes[i] = Pipe.open();
+			models[i] = new Vt100TerminalModel();
+			listeners[i] = new CountingListener();
+			multiplexer.register(pipes[i].source(), models[i], listeners[i]);
+		}
+
+		for (int i = 0; i < pipes.length; i++) {
+			pipes[i].sink().write(ByteBuffer.wrap(new byte[] { (byte) ('0' + i), 'x' }));
+			pipes[i].sink().close();
+		}
+
+		for (int i = 0; i < pipes.length; i++) {
+			assertTrue(listeners[i].closed.await(5, TimeUnit.SECONDS));
+			assertEquals((char) ('0' + i), models[i].getCell(0, 0).getCharacter());
+			assertEquals('x', models[i].getCell(1, 0).getCharacter());
+		}
+
+		multiplexer.stop();
+		for (int i = 0; i < pipes.length; i++) {
+			assertEquals(1, listeners[i].closes.get());
+		}
+	}
+
+	/**
+	 * Tests that stopping a multiplexer closes its pumps.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testStop() throws IOException, InterruptedException {
+		TerminalMultiplexer multiplexer = new TerminalMultiplexer();
+		Pipe pipe = Pipe.open();
+		CountingListener listener = new CountingListener();
+		TerminalPump pump = multiplexer.register(pipe.source(), new Vt100TerminalModel(), listener);
+
+		multiplexer.stop();
+		assertTrue(pump.isClosed());
+		assertFalse(pipe.source().isOpen());
+		assertEquals(1, listener.closes.get());
+
+		try {
+			multiplexer.register(Pipe.open().source(), new Vt100TerminalModel(), listener);
+			fail();
+		} catch (IllegalStateException ex) {
+			/* expected */
+		}
+	}
+
+}
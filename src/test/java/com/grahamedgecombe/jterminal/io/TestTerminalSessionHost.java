@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.grahamedgecombe.jterminal.vt100.CellStorage;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A test for the {@link TerminalSessionHost} class.
+ * @author Graham Edgecombe
+ */
+public class TestTerminalSessionHost {
+
+	/**
+	 * A listener which counts down a latch when a session is closed.
+	 * @author Graham Edgecombe
+	 */
+	private static final class LatchListener implements PumpListener {
+
+		/**
+		 * The latch.
+		 */
+		private final CountDownLatch latch;
+
+		/**
+		 * Creates the listener.
+		 * @param latch The latch.
+		 */
+		public LatchListener(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void printed(TerminalPump pump) {
+			/* empty */
+		}
+
+		@Override
+		public void closed(TerminalPump pump, IOException cause) {
+			latch.countDown();
+		}
+
+	}
+
+	/**
+	 * The executor.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Sets up the executor.
+	 */
+	@Before
+	public void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Shuts down the executor.
+	 */
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Tests that sessions print their input and are removed once it ends.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testLifecycle() throws InterruptedException {
+		TerminalSessionHost host = new TerminalSessionHost(executor);
+		CountDownLatch latch = new CountDownLatch(2);
+		Vt100TerminalModel first = new Vt100TerminalModel();
+		Vt100TerminalModel second = new Vt100TerminalModel();
+		TerminalSession session = host.open(Channels.newChannel(new ByteArrayInputStream("abc".getBytes())), first, new LatchListener(latch));
+		host.open(Channels.newChannel(new ByteArrayInputStream("de".getBytes())), second, new LatchListener(latch));
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(session.isClosed());
+		assertNull(host.getSession(session.getId()));
+		assertEquals(0, host.getSessionCount());
+		assertEquals(2, host.getOpenedCount());
+		assertEquals(2, host.getClosedCount());
+		assertEquals(5, host.getBytesPrinted());
+		assertEquals('c', first.getCell(2, 0).getCharacter());
+		assertEquals('e', second.getCell(1, 0).getCharacter());
+	}
+
+	/**
+	 * Tests that idle sessions are closed.
+	 * @throws IOException if an I/O error occurs.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testEviction() throws IOException, InterruptedException {
+		TerminalSessionHost host = new TerminalSessionHost(executor, 50, TimeUnit.MILLISECONDS);
+		CountDownLatch latch = new CountDownLatch(1);
+		Pipe pipe = Pipe.open();
+		TerminalSession session = host.open(pipe.source(), new Vt100TerminalModel(), new LatchListener(latch));
+		assertEquals(1, host.getSessionCount());
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(session.isClosed());
+		assertEquals(1, host.getEvictedCount());
+		assertEquals(0, host.getSessionCount());
+		host.close();
+	}
+
+	/**
+	 * Tests that closing the host closes its sessions.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Test
+	public void testClose() throws IOException {
+		TerminalSessionHost host = new TerminalSessionHost(executor);
+		TerminalSession session = host.open(Pipe.open().source(), new Vt100TerminalModel());
+		host.close();
+
+		assertTrue(session.isClosed());
+		assertEquals(0, host.getSessionCount());
+		try {
+			host.open(Pipe.open().source(), new Vt100TerminalModel());
+			fail();
+		} catch (IllegalStateException ex) {
+			/* expected */
+		}
+	}
+
+	/**
+	 * Opens 10,000 sessions which each replay a recording of a full-screen
+	 * application, and reports the throughput and the heap used per session.
+	 * This only runs if the {@code jterminal.loadTest} system property is
+	 * {@code true}. Virtual threads are used if they are available.
+	 * @throws Exception if an error occurs.
+	 */
+	@Test
+	public void testLoad() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("jterminal.loadTest"));
+
+		int count = 10000;
+		byte[] recording = createRecording();
+
+		ExecutorService executor;
+		String threads;
+		try {
+			executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			threads = "virtual threads";
+		} catch (NoSuchMethodException ex) {
+			int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+			executor = Executors.newFixedThreadPool(poolSize);
+			threads = poolSize + " platform threads";
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+		TerminalSessionHost host = new TerminalSessionHost(executor);
+		Vt100TerminalModel[] models = new Vt100TerminalModel[count];
+		CountDownLatch latch = new CountDownLatch(count);
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			models[i] = new Vt100TerminalModel(80, 24, 24, CellStorage.PACKED);
+			host.open(Channels.newChannel(new ByteArrayInputStream(recording)), models[i], new LatchListener(latch), 4096);
+		}
+		assertTrue(latch.await(10, TimeUnit.MINUTES));
+		long elapsed = System.nanoTime() - start;
+
+		System.gc();
+		long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+		executor.shutdown();
+
+		assertEquals((long) count * recording.length, host.getBytesPrinted());
+		System.out.printf("%d sessions on %s: %.1f MB/s, %.0f sessions/s, %.1f KiB of heap per session%n",
+				count, threads, host.getBytesPrinted() * 1000.0 / elapsed, count * 1e9 / elapsed,
+				(heapAfter - heapBefore) / 1024.0 / count);
+		assertEquals('+', models[count - 1].getCell(79, 23).getCharacter());
+	}
+
+	/**
+	 * Creates a recording of a full-screen application redrawing itself.
+	 * @return The recording.
+	 */
+	private static byte[] createRecording() {
+		StringBuilder recording = new StringBuilder();
+		for (int frame = 0; frame < 20; frame++) {
+			recording.append("\u001B[H\u001B[2J");
+			for (int row = 1; row <= 24; row++) {
+				recording.append("\u001B[").append(row).append(";1H\u001B[3").append(row % 8).append(";4").append(frame % 8).append('m');
+				for (int column = 0; column < 79; column++) {
+					recording.append((char) ('A' + (row + column + frame) % 26));
+				}
+				recording.append(row == 24 ? "\u001B[0m+" : "\u001B[0m|");
+			}
+		}
+		return recording.toString().getBytes();
+	}
+
+}
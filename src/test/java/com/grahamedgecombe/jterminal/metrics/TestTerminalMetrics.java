@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.metrics;
+
+import static org.junit.Assert.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.grahamedgecombe.jterminal.JTerminal;
+import com.grahamedgecombe.jterminal.vt100.Vt100TerminalModel;
+
+/**
+ * A test for the {@link TerminalMetrics} class.
+ * @author Graham Edgecombe
+ */
+public class TestTerminalMetrics {
+
+	/**
+	 * Tests the counters updated by the model.
+	 */
+	@Test
+	public void testModel() {
+		Vt100TerminalModel model = new Vt100TerminalModel(80, 2, 2);
+		TerminalMetrics metrics = new TerminalMetrics();
+		model.setMetricsSink(metrics);
+		assertSame(metrics, model.getMetricsSink());
+
+		model.print("\u001B[31mab\u001B[2J\r\n\n");
+		byte[] bytes = { 'c', (byte) 0xC3, (byte) 0xA9, '\n' };
+		model.print(bytes, 0, bytes.length);
+
+		assertEquals(4, metrics.getBytesPrinted());
+		assertEquals(17, metrics.getCharactersPrinted());
+		assertEquals(1, metrics.getControlSequences('m'));
+		assertEquals(1, metrics.getControlSequences('J'));
+		assertEquals(2, metrics.getControlSequences());
+		assertEquals(4, metrics.getCellsWritten());
+		assertEquals(1, metrics.getScrolls());
+	}
+
+	/**
+	 * Tests the paint durations and latencies recorded by the terminal.
+	 */
+	@Test
+	public void testPaint() {
+		JTerminal terminal = new JTerminal(new Vt100TerminalModel(80, 25, 25));
+		TerminalMetrics metrics = new TerminalMetrics();
+		terminal.setMetricsSink(metrics);
+		terminal.setSize(terminal.getPreferredSize());
+		terminal.doLayout();
+
+		BufferedImage image = new BufferedImage(terminal.getWidth(), terminal.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			terminal.print("Hello");
+			terminal.paint(g);
+			terminal.paint(g);
+		} finally {
+			g.dispose();
+		}
+
+		assertEquals(2, metrics.getPaintCount());
+		assertEquals(1, metrics.getInputLatencies().getCount());
+		assertTrue(metrics.getPaintTimes().getMax(TimeUnit.NANOSECONDS) > 0);
+	}
+
+	/**
+	 * Tests the histogram statistics.
+	 */
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentile(50, TimeUnit.NANOSECONDS));
+
+		for (int i = 0; i < 99; i++) {
+			histogram.record(100);
+		}
+		histogram.record(5000);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(99, histogram.getBucketCount(7));
+		assertEquals(1, histogram.getBucketCount(13));
+		assertEquals(149, histogram.getMean(TimeUnit.NANOSECONDS));
+		assertEquals(5000, histogram.getMax(TimeUnit.NANOSECONDS));
+		assertEquals(128, histogram.getPercentile(50, TimeUnit.NANOSECONDS));
+		assertEquals(128, histogram.getPercentile(99, TimeUnit.NANOSECONDS));
+		assertEquals(5000, histogram.getPercentile(100, TimeUnit.NANOSECONDS));
+	}
+
+}
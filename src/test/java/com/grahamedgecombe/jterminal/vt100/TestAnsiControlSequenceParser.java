@@ -70,10 +70,9 @@ public class TestAnsiControlSequenceParser implements AnsiControlSequenceListene
 		assertEquals(AnsiControlSequence.class, obj.getClass());
 
 		AnsiControlSequence seq = (AnsiControlSequence) obj;
-		String[] params = seq.getParameters();
 
 		assertEquals('u', seq.getCommand());
-		assertEquals(0, params.length);
+		assertEquals(0, seq.getParameterCount());
 	}
 
 	/**
@@ -96,12 +95,11 @@ public class TestAnsiControlSequenceParser implements AnsiControlSequenceListene
 		assertEquals(AnsiControlSequence.class, obj.getClass());
 
 		AnsiControlSequence seq = (AnsiControlSequence) obj;
-		String[] params = seq.getParameters();
 
 		assertEquals('m', seq.getCommand());
-		assertEquals(2, params.length);
-		assertEquals("30", params[0]);
-		assertEquals("40", params[1]);
+		assertEquals(2, seq.getParameterCount());
+		assertEquals(30, seq.getParameter(0, 0));
+		assertEquals(40, seq.getParameter(1, 0));
 	}
 
 	/**
@@ -135,9 +133,8 @@ public class TestAnsiControlSequenceParser implements AnsiControlSequenceListene
 		assertEquals("bye", o3);
 
 		AnsiControlSequence seq = (AnsiControlSequence) o2;
-		String[] params = seq.getParameters();
 
-		assertEquals(0, params.length);
+		assertEquals(0, seq.getParameterCount());
 		assertEquals('u', seq.getCommand());
 	}
 
@@ -154,12 +151,11 @@ public class TestAnsiControlSequenceParser implements AnsiControlSequenceListene
 		assertEquals(AnsiControlSequence.class, obj.getClass());
 
 		AnsiControlSequence seq = (AnsiControlSequence) obj;
-		String[] params = seq.getParameters();
 
 		assertEquals('m', seq.getCommand());
-		assertEquals(2, params.length);
-		assertEquals("30", params[0]);
-		assertEquals("40", params[1]);
+		assertEquals(2, seq.getParameterCount());
+		assertEquals(30, seq.getParameter(0, 0));
+		assertEquals(40, seq.getParameter(1, 0));
 	}
 
 	/**
@@ -188,10 +184,9 @@ public class TestAnsiControlSequenceParser implements AnsiControlSequenceListene
 		assertEquals(AnsiControlSequence.class, obj.getClass());
 
 		AnsiControlSequence seq = (AnsiControlSequence) obj;
-		String[] params = seq.getParameters();
 		assertEquals('n', seq.getCommand());
-		assertEquals(1, params.length);
-		assertEquals("6", params[0]);
+		assertEquals(1, seq.getParameterCount());
+		assertEquals(6, seq.getParameter(0, 0));
 	}
 
 	/**
@@ -207,19 +202,105 @@ public class TestAnsiControlSequenceParser implements AnsiControlSequenceListene
 		assertEquals(AnsiControlSequence.class, obj.getClass());
 
 		AnsiControlSequence seq = (AnsiControlSequence) obj;
-		String[] params = seq.getParameters();
 		assertEquals('s', seq.getCommand());
-		assertEquals(0, params.length);
+		assertEquals(0, seq.getParameterCount());
+	}
+
+	/**
+	 * Tests omitted and oversized parameters.
+	 */
+	@Test
+	public void testDefaultParameters() {
+		parser.parse("\u009B;5;;99999999H");
+
+		assertEquals(1, objects.size());
+		AnsiControlSequence seq = (AnsiControlSequence) objects.get(0);
+		assertEquals('H', seq.getCommand());
+		assertEquals(4, seq.getParameterCount());
+		assertEquals(1, seq.getParameter(0, 1));
+		assertEquals(5, seq.getParameter(1, 1));
+		assertEquals(1, seq.getParameter(2, 1));
+		assertEquals(AnsiControlSequence.MAX_PARAMETER_VALUE, seq.getParameter(3, 1));
+		assertEquals(1, seq.getParameter(4, 1));
+	}
+
+	/**
+	 * Tests a sequence with a private marker and an intermediate character.
+	 */
+	@Test
+	public void testPrivateSequence() {
+		parser.parse("\u001B[?25h\u001B[!p");
+
+		assertEquals(2, objects.size());
+		AnsiControlSequence seq = (AnsiControlSequence) objects.get(0);
+		assertEquals('h', seq.getCommand());
+		assertEquals('?', seq.getPrivateMarker());
+		assertEquals(25, seq.getParameter(0, 0));
+
+		seq = (AnsiControlSequence) objects.get(1);
+		assertEquals('p', seq.getCommand());
+		assertEquals(0, seq.getPrivateMarker());
+		assertEquals('!', seq.getIntermediates());
+	}
+
+	/**
+	 * Tests that other escape sequences and operating system commands are not
+	 * printed.
+	 */
+	@Test
+	public void testIgnoredSequences() {
+		parser.parse("a\u001B7b\u001B]0;title\u0007c\u001B]2;x\u001B\\d\u001BPq#0\u009Ce");
+
+		assertEquals(5, objects.size());
+		assertEquals("a", objects.get(0));
+		assertEquals("b", objects.get(1));
+		assertEquals("c", objects.get(2));
+		assertEquals("d", objects.get(3));
+		assertEquals("e", objects.get(4));
+	}
+
+	/**
+	 * Tests that control characters within a sequence are executed.
+	 */
+	@Test
+	public void testControlWithinSequence() {
+		parser.parse("\u001B[1\r2Cx");
+
+		assertEquals(3, objects.size());
+		assertEquals('\r', objects.get(0));
+		AnsiControlSequence seq = (AnsiControlSequence) objects.get(1);
+		assertEquals(12, seq.getParameter(0, 0));
+		assertEquals("x", objects.get(2));
 	}
 
 	@Override
 	public void parsedControlSequence(AnsiControlSequence seq) {
-		objects.add(seq);
+		objects.add(seq.copy());
+	}
+
+	/**
+	 * Tests that control characters split runs of text.
+	 */
+	@Test
+	public void testControlCharacters() {
+		parser.parse("ab\r\ncd\u0007");
+
+		assertEquals(5, objects.size());
+		assertEquals("ab", objects.get(0));
+		assertEquals('\r', objects.get(1));
+		assertEquals('\n', objects.get(2));
+		assertEquals("cd", objects.get(3));
+		assertEquals('\u0007', objects.get(4));
+	}
+
+	@Override
+	public void parsedText(char[] text, int offset, int length) {
+		objects.add(new String(text, offset, length));
 	}
 
 	@Override
-	public void parsedString(String str) {
-		objects.add(str);
+	public void parsedControlCharacter(char character) {
+		objects.add(character);
 	}
 
 }
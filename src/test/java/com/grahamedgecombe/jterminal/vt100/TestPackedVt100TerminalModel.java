@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+import com.grahamedgecombe.jterminal.TerminalCell;
+import com.grahamedgecombe.jterminal.TerminalModel;
+
+/**
+ * A test for the {@link Vt100TerminalModel} class using
+ * {@link CellStorage#PACKED} storage.
+ * @author Graham Edgecombe
+ */
+public class TestPackedVt100TerminalModel extends TestVt100TerminalModel {
+
+	@Override
+	protected TerminalModel createModel(int columns, int rows, int bufferSize) {
+		return new Vt100TerminalModel(columns, rows, bufferSize, CellStorage.PACKED);
+	}
+
+	/**
+	 * Tests that cells set directly keep their colors.
+	 */
+	@Test
+	public void testSetCell() {
+		TerminalModel model = createModel(80, 25, 25);
+		Color back = new Color(1, 2, 3);
+		Color fore = new Color(4, 5, 6, 7);
+		model.setCell(3, 4, new TerminalCell('Z', back, fore));
+
+		TerminalCell cell = model.getCell(3, 4);
+		assertNotNull(cell);
+		assertEquals('Z', cell.getCharacter());
+		assertEquals(back, cell.getBackgroundColor());
+		assertEquals(fore, cell.getForegroundColor());
+		assertSame(cell, model.getCell(3, 4));
+
+		model.setCell(3, 4, null);
+		assertNull(model.getCell(3, 4));
+	}
+
+}
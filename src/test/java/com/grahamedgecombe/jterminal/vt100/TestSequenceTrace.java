@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * A test for the {@link SequenceTrace} class.
+ * @author Graham Edgecombe
+ */
+public class TestSequenceTrace {
+
+	/**
+	 * Tests that parsed events are recorded and dumped in order.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Test
+	public void testDump() throws IOException {
+		Vt100TerminalModel model = new Vt100TerminalModel();
+		StringBuilder out = new StringBuilder();
+		assertFalse(model.dumpTrace(out));
+
+		model.setTrace(new SequenceTrace());
+		model.print("Hello\u001B[1;31mworld\u001B[?25l\u001B[;5H\u001B[ q\r\n");
+
+		assertTrue(model.dumpTrace(out));
+		assertEquals("TEXT 5\nCSI 1;31m\nTEXT 5\nCSI ?25l\nCSI ;5H\nCSI  q\nCTRL 0x0D\nCTRL 0x0A\n", out.toString());
+		assertEquals(8, model.getTrace().getEventCount());
+	}
+
+	/**
+	 * Tests that the oldest events are overwritten once the trace is full and
+	 * that long parameter lists are truncated.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Test
+	public void testWrap() throws IOException {
+		Vt100TerminalModel model = new Vt100TerminalModel();
+		SequenceTrace trace = new SequenceTrace(2);
+		model.setTrace(trace);
+		model.print("a\rb\u001B[1;2;3;4;5;6;7;8;9;10;11;12;13;14m");
+
+		StringBuilder out = new StringBuilder();
+		model.dumpTrace(out);
+		assertEquals("... 2 earlier events dropped\nTEXT 1\nCSI 1;2;3;4;5;6;7;8;9;10;11;12;...m\n", out.toString());
+		assertEquals(4, trace.getEventCount());
+		assertEquals(2, trace.getDroppedEventCount());
+
+		trace.clear();
+		out.setLength(0);
+		trace.dump(out);
+		assertEquals("", out.toString());
+	}
+
+}
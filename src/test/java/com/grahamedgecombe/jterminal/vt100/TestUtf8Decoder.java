@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2009-2011 Graham Edgecombe.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grahamedgecombe.jterminal.vt100;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A test for the {@link Utf8Decoder} class.
+ * @author Graham Edgecombe
+ */
+public class TestUtf8Decoder {
+
+	/**
+	 * The decoder.
+	 */
+	private Utf8Decoder decoder;
+
+	/**
+	 * Sets up the decoder.
+	 */
+	@Before
+	public void setUp() {
+		decoder = new Utf8Decoder();
+	}
+
+	/**
+	 * Tests ASCII and multi-byte characters.
+	 */
+	@Test
+	public void testDecode() {
+		assertEquals("a\u00E9\u20AC\uD83D\uDE00", decode(0x61, 0xC3, 0xA9, 0xE2, 0x82, 0xAC, 0xF0, 0x9F, 0x98, 0x80));
+	}
+
+	/**
+	 * Tests characters which are split between calls.
+	 */
+	@Test
+	public void testSplit() {
+		assertEquals("", decode(0xE2));
+		assertEquals("", decode(0x82));
+		assertEquals("\u20ACa", decode(0xAC, 0x61, 0xF0, 0x9F));
+		assertEquals("\uD83D\uDE00", decode(0x98, 0x80));
+	}
+
+	/**
+	 * Tests invalid input.
+	 */
+	@Test
+	public void testInvalid() {
+		char r = Utf8Decoder.REPLACEMENT_CHARACTER;
+		assertEquals(r + "a", decode(0xE2, 0x82, 0x61));
+		assertEquals(String.valueOf(r), decode(0xC0, 0x80));
+		assertEquals(String.valueOf(r), decode(0xED, 0xA0, 0x80));
+		assertEquals(String.valueOf(r), decode(0xF4, 0x90, 0x80, 0x80));
+		assertEquals(r + "" + r, decode(0xB0, 0xFF));
+	}
+
+	/**
+	 * Tests that stray bytes in the C1 range are decoded as C1 controls.
+	 */
+	@Test
+	public void testC1() {
+		assertEquals("\u009B2J\u00DB", decode(0x9B, 0x32, 0x4A, 0xC3, 0x9B));
+	}
+
+	/**
+	 * Decodes some bytes.
+	 * @param bytes The bytes, as unsigned values.
+	 * @return The decoded string.
+	 */
+	private String decode(int... bytes) {
+		byte[] array = new byte[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			array[i] = (byte) bytes[i];
+		}
+		char[] chars = new char[bytes.length + 1];
+		int count = decoder.decode(array, 0, array.length, chars, 0);
+		return new String(chars, 0, count);
+	}
+
+}
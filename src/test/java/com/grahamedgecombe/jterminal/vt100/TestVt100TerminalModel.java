@@ -25,12 +25,17 @@ package com.grahamedgecombe.jterminal.vt100;
 import static org.junit.Assert.*;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.grahamedgecombe.jterminal.TerminalCell;
 import com.grahamedgecombe.jterminal.TerminalModel;
+import com.grahamedgecombe.jterminal.TerminalRegion;
+import com.grahamedgecombe.jterminal.TerminalSnapshot;
 import com.grahamedgecombe.jterminal.bell.BellStrategy;
 
 /**
@@ -44,12 +49,23 @@ public class TestVt100TerminalModel {
 	 */
 	private TerminalModel model;
 
+	/**
+	 * Creates the terminal model under test.
+	 * @param columns The number of columns.
+	 * @param rows The number of rows.
+	 * @param bufferSize The buffer size.
+	 * @return The terminal model.
+	 */
+	protected TerminalModel createModel(int columns, int rows, int bufferSize) {
+		return new Vt100TerminalModel(columns, rows, bufferSize);
+	}
+
 	/**
 	 * Sets up the terminal model.
 	 */
 	@Before
 	public void setUp(){
-		model = new Vt100TerminalModel();
+		model = createModel(80, 25, 25);
 	}
 
 	/**
@@ -86,12 +102,55 @@ public class TestVt100TerminalModel {
 		assertEquals('B', model.getCell(8, 1).getCharacter());
 	}
 
+	/**
+	 * Tests that a long run of text wraps onto the following rows.
+	 */
+	@Test
+	public void testLongText() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append((char) ('a' + i % 26));
+		}
+		model.setCursorColumn(10);
+		model.print(text.toString());
+
+		assertNull(model.getCell(9, 0));
+		assertEquals('a', model.getCell(10, 0).getCharacter());
+		assertEquals('r', model.getCell(79, 0).getCharacter());
+		assertEquals('s', model.getCell(0, 1).getCharacter());
+		assertEquals('r', model.getCell(49, 2).getCharacter());
+		assertNull(model.getCell(50, 2));
+		assertEquals(50, model.getCursorColumn());
+		assertEquals(2, model.getCursorRow());
+	}
+
+	/**
+	 * Tests printing UTF-8 encoded bytes, with a character and a control
+	 * sequence split between calls.
+	 */
+	@Test
+	public void testPrintBytes() {
+		Vt100TerminalModel model = (Vt100TerminalModel) this.model;
+		byte[] bytes = { 'a', (byte) 0xE2, (byte) 0x82, (byte) 0xAC, 0x1B, '[', '3', 'C', 'b' };
+		model.print(bytes, 0, 2);
+		model.print(bytes, 2, 5);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(2);
+		buffer.put(bytes, 7, 2).flip();
+		model.print(buffer);
+		assertFalse(buffer.hasRemaining());
+
+		assertEquals('a', model.getCell(0, 0).getCharacter());
+		assertEquals('\u20AC', model.getCell(1, 0).getCharacter());
+		assertNull(model.getCell(2, 0));
+		assertEquals('b', model.getCell(5, 0).getCharacter());
+	}
+
 	/**
 	 * Tests that the terminal scrolls once the buffer is full.
 	 */
 	@Test
 	public void testBuffer() {
-		model = new Vt100TerminalModel(model.getColumns(), 2, 2);
+		model = createModel(model.getColumns(), 2, 2);
 		model.print("This is line one.\r\n");
 		model.print("This is line two. XXXXXX\r\n");
 		model.print("And this is line three!");
@@ -99,6 +158,46 @@ public class TestVt100TerminalModel {
 		assertNull(model.getCell(23, 1));
 	}
 
+	/**
+	 * Tests that rows stay in order after the buffer has scrolled through
+	 * itself several times.
+	 */
+	@Test
+	public void testScrollback() {
+		model = createModel(model.getColumns(), 3, 5);
+		model.print("a");
+		for (int i = 1; i < 12; i++) {
+			model.print("\r\n" + (char) ('a' + i));
+		}
+		model.print("\u009B2K");
+		for (int row = 0; row < 4; row++) {
+			assertEquals((char) ('h' + row), model.getCell(0, row).getCharacter());
+			assertNull(model.getCell(1, row));
+		}
+		assertNull(model.getCell(0, 4));
+		assertEquals(4, model.getCursorRow());
+
+		model.setCell(2, 1, new TerminalCell('x', Color.BLACK, Color.WHITE));
+		model.print("\r\ny");
+		assertEquals('i', model.getCell(0, 0).getCharacter());
+		assertEquals('x', model.getCell(2, 0).getCharacter());
+		assertNull(model.getCell(0, 3));
+		assertEquals('y', model.getCell(0, 4).getCharacter());
+	}
+
+	/**
+	 * Tests that each line feed at the bottom of the buffer scrolls it.
+	 */
+	@Test
+	public void testBlankLines() {
+		model = createModel(model.getColumns(), 3, 3);
+		model.print("a\r\nb\r\nc\r\n\r\n\r\nd");
+		assertNull(model.getCell(0, 0));
+		assertNull(model.getCell(0, 1));
+		assertEquals('d', model.getCell(0, 2).getCharacter());
+		assertEquals(2, model.getCursorRow());
+	}
+
 	/**
 	 * Tests the erase functionality.
 	 */
@@ -111,6 +210,307 @@ public class TestVt100TerminalModel {
 		}
 	}
 
+	/**
+	 * Tests that erasing within a line only affects the cursor's row.
+	 */
+	@Test
+	public void testEraseInLine() {
+		model.print("abcdef\r\nghijkl\r\nmnopqr\u001B[2;3H\u001B[K");
+		assertEquals('h', model.getCell(1, 1).getCharacter());
+		assertNull(model.getCell(2, 1));
+		assertNull(model.getCell(5, 1));
+		assertEquals('c', model.getCell(2, 0).getCharacter());
+		assertEquals('o', model.getCell(2, 2).getCharacter());
+
+		model.print("\u001B[3;3H\u001B[1K");
+		assertNull(model.getCell(0, 2));
+		assertNull(model.getCell(2, 2));
+		assertEquals('p', model.getCell(3, 2).getCharacter());
+
+		model.print("\u001B[1;4H\u001B[2K");
+		for (int i = 0; i < 6; i++) {
+			assertNull(model.getCell(i, 0));
+		}
+		assertEquals('g', model.getCell(0, 1).getCharacter());
+	}
+
+	/**
+	 * Tests the bulk region operations.
+	 */
+	@Test
+	public void testRegions() {
+		model.print("abcdef\r\nghijkl\r\nmnopqr\r\nstuvwx");
+
+		TerminalCell cell = new TerminalCell('*', Color.BLACK, Color.WHITE);
+		model.fillRegion(1, 1, 2, 2, cell);
+		assertEquals('*', model.getCell(1, 1).getCharacter());
+		assertEquals(Color.WHITE, model.getCell(2, 2).getForegroundColor());
+		assertEquals('j', model.getCell(3, 1).getCharacter());
+		assertEquals('a', model.getCell(0, 0).getCharacter());
+
+		/* overlapping copy to the right and down */
+		model.copyRegion(0, 0, 3, 2, 1, 1);
+		assertEquals("abc", rowText(0, 3));
+		assertEquals("gabc", rowText(1, 4));
+		assertEquals("mg**", rowText(2, 4));
+
+		model.scrollRegion(0, 0, 6, 4, 1);
+		assertEquals("gabckl", rowText(0, 6));
+		assertEquals("stuvwx", rowText(2, 6));
+		assertNull(model.getCell(0, 3));
+
+		model.scrollRegion(0, 0, 6, 4, -2);
+		assertNull(model.getCell(0, 0));
+		assertNull(model.getCell(5, 1));
+		assertEquals("gabckl", rowText(2, 6));
+
+		TerminalCell[] row = model.getRow(2, null);
+		assertEquals(model.getColumns(), row.length);
+		assertSame(row, model.getRow(3, row));
+		assertEquals('m', row[0].getCharacter());
+
+		model.clearRegion(0, 2, 3, 1);
+		assertNull(model.getCell(2, 2));
+		assertEquals('c', model.getCell(3, 2).getCharacter());
+
+		try {
+			model.clearRegion(0, 24, 1, 2);
+			fail();
+		} catch (IndexOutOfBoundsException ex) {
+			/* expected */
+		}
+
+		try {
+			model.fillRegion(78, 0, 3, 1, cell);
+			fail();
+		} catch (IndexOutOfBoundsException ex) {
+			/* expected */
+		}
+	}
+
+	/**
+	 * Tests inserting and deleting lines.
+	 */
+	@Test
+	public void testInsertAndDeleteLines() {
+		model.print("a\r\nb\r\nc\r\nd\u001B[2;3H\u001B[2L");
+		assertEquals(0, model.getCursorColumn());
+		assertEquals(1, model.getCursorRow());
+		assertEquals("a", rowText(0, 1));
+		assertNull(model.getCell(0, 1));
+		assertNull(model.getCell(0, 2));
+		assertEquals("b", rowText(3, 1));
+		assertEquals("d", rowText(5, 1));
+
+		model.print("\u001B[M");
+		assertNull(model.getCell(0, 1));
+		assertEquals("b", rowText(2, 1));
+		assertEquals("d", rowText(4, 1));
+		assertNull(model.getCell(0, 5));
+
+		/* lines pushed off the bottom are lost */
+		model.print("\u001B[1;1H\u001B[99L");
+		for (int row = 0; row < model.getRows(); row++) {
+			assertNull(model.getCell(0, row));
+		}
+
+		model.print("x\u001B[25;1Hy\u001B[1;1H\u001B[M");
+		assertNull(model.getCell(0, 0));
+		assertEquals("y", rowText(23, 1));
+		assertNull(model.getCell(0, 24));
+
+		/* rows which wrap around the end of the circular buffer */
+		model.print("\u001B[2J\u001B[1;1H");
+		for (char c = 'A'; c <= 'Z'; c++) {
+			model.print("\r\n" + c);
+		}
+		model.print("\u001B[10;1H\u001B[3M");
+		assertEquals("J", rowText(8, 1));
+		assertEquals("N", rowText(9, 1));
+		assertEquals("Z", rowText(21, 1));
+		assertNull(model.getCell(0, 22));
+		assertNull(model.getCell(0, 24));
+	}
+
+	/**
+	 * Tests inserting, deleting and erasing characters.
+	 */
+	@Test
+	public void testInsertAndDeleteCharacters() {
+		model.print("abcdef\u001B[1;3H\u001B[2@");
+		assertEquals("ab  cdef", rowText(0, 8));
+		assertEquals(2, model.getCursorColumn());
+
+		model.print("\u001B[3P");
+		assertEquals("abdef   ", rowText(0, 8));
+
+		model.print("\u001B[X");
+		assertEquals("ab ef   ", rowText(0, 8));
+
+		/* characters shifted past the last column are lost */
+		model.print("\u001B[1;80Hz\u001B[1;79H\u001B[@");
+		assertNull(model.getCell(79, 0));
+		model.print("\u001B[1;1H\u001B[99X");
+		for (int column = 0; column < model.getColumns(); column++) {
+			assertNull(model.getCell(column, 0));
+		}
+	}
+
+	/**
+	 * Tests scrolling the screen up and down.
+	 */
+	@Test
+	public void testScrollUpAndDown() {
+		model.print("a\r\nb\r\nc\u001B[S");
+		assertEquals("b", rowText(0, 1));
+		assertEquals("c", rowText(1, 1));
+		assertNull(model.getCell(0, 2));
+		assertEquals(2, model.getCursorRow());
+
+		model.print("\u001B[3T");
+		assertNull(model.getCell(0, 0));
+		assertNull(model.getCell(0, 2));
+		assertEquals("b", rowText(3, 1));
+		assertEquals("c", rowText(4, 1));
+
+		/* with more than one parameter, T is xterm's mouse tracking */
+		model.print("\u001B[1;1;1;1;1T");
+		assertEquals("b", rowText(3, 1));
+	}
+
+	/**
+	 * Tests that line feeds at the bottom margin only scroll the rows between
+	 * the margins.
+	 */
+	@Test
+	public void testScrollMargins() {
+		model.print("top\u001B[25;1Hstatus\u001B[2;24r");
+		assertEquals(0, model.getCursorRow());
+		assertEquals(0, model.getCursorColumn());
+
+		model.print("\u001B[2;1H");
+		for (int i = 0; i < 30; i++) {
+			model.print(i + "\r\n");
+		}
+		assertEquals("top", rowText(0, 3));
+		assertEquals("status", rowText(24, 6));
+		assertEquals("8 ", rowText(1, 2));
+		assertEquals("29", rowText(22, 2));
+		assertNull(model.getCell(0, 23));
+		assertEquals(23, model.getCursorRow());
+
+		/* wrapping at the bottom margin scrolls too */
+		for (int i = 0; i < 81; i++) {
+			model.print("w");
+		}
+		assertEquals("9 ", rowText(1, 2));
+		assertEquals("w", rowText(23, 1));
+		assertEquals(23, model.getCursorRow());
+
+		/* insert and delete line and scroll up and down stay within them */
+		model.print("\u001B[M");
+		assertEquals("status", rowText(24, 6));
+		assertNull(model.getCell(0, 23));
+		model.print("\u001B[2T");
+		assertNull(model.getCell(0, 1));
+		assertEquals("9 ", rowText(3, 2));
+		assertEquals("top", rowText(0, 3));
+
+		/* invalid margins are ignored, no parameters reset them */
+		model.print("\u001B[5;5r");
+		assertEquals(23, model.getCursorRow());
+		model.print("\u001B[r\u001B[25;1H\r\nx");
+		assertNull(model.getCell(0, 0));
+		assertEquals("status", rowText(23, 6));
+		assertEquals("x", rowText(24, 1));
+
+		/* a bottom margin of 0 is the last row */
+		model.print("\u001B[2J\u001B[5;0r");
+		assertEquals(0, model.getCursorRow());
+		model.print("\u001B[4;1Hkeep\u001B[5;1Hgone\u001B[25;1Hlast\r\n");
+		assertEquals("keep", rowText(3, 4));
+		assertNull(model.getCell(0, 4));
+		assertEquals("last", rowText(23, 4));
+	}
+
+	/**
+	 * Tests that scrolling between the margins is reported as a scrolled
+	 * region rather than as damage to every row.
+	 */
+	@Test
+	public void testScrollDamage() {
+		model.print("\u001B[2;24r\u001B[24;1H");
+		model.collectDamage();
+
+		model.print("\r\na\r\nb");
+		List<TerminalRegion> damage = model.collectDamage();
+		assertEquals(3, damage.size());
+		assertRegion(0, 1, 80, 23, damage.get(0));
+		assertEquals(2, damage.get(0).getScroll());
+		/* the cursor was drawn in row 23, which has moved to row 21 */
+		assertRegion(0, 21, 1, 1, damage.get(1));
+		assertRegion(0, 22, 80, 2, damage.get(2));
+		assertTrue(model.collectDamage().isEmpty());
+
+		/* scrolling back down cancels out */
+		model.print("\u001B[S\u001B[T");
+		damage = model.collectDamage();
+		assertEquals(1, damage.size());
+		assertRegion(0, 1, 80, 1, damage.get(0));
+		assertEquals(0, damage.get(0).getScroll());
+
+		/* scrolling a different region falls back to damaging it */
+		model.print("\u001B[S\u001B[10;1H\u001B[L");
+		damage = model.collectDamage();
+		assertEquals(1, damage.get(0).getScroll());
+		assertRegion(0, 9, 80, 15, damage.get(1));
+	}
+
+	/**
+	 * Tests that a line feed or a wrap at the bottom of the screen, with no
+	 * margins set, is reported as a scrolled region.
+	 */
+	@Test
+	public void testFullScreenScrollDamage() {
+		model.print("\u001B[25;1H");
+		model.collectDamage();
+
+		model.print("\r\na\r\nb");
+		List<TerminalRegion> damage = model.collectDamage();
+		assertEquals(3, damage.size());
+		assertRegion(0, 0, 80, 25, damage.get(0));
+		assertEquals(2, damage.get(0).getScroll());
+		/* the cursor was drawn in row 24, which has moved to row 22 */
+		assertRegion(0, 22, 1, 1, damage.get(1));
+		assertRegion(0, 23, 80, 2, damage.get(2));
+		assertEquals('a', model.getCell(0, 23).getCharacter());
+		assertEquals('b', model.getCell(0, 24).getCharacter());
+
+		char[] line = new char[80];
+		Arrays.fill(line, 'c');
+		model.print("\r" + new String(line) + "d");
+		damage = model.collectDamage();
+		assertEquals(1, damage.get(0).getScroll());
+		assertRegion(0, 0, 80, 25, damage.get(0));
+		assertEquals('d', model.getCell(0, 24).getCharacter());
+	}
+
+	/**
+	 * Gets the characters at the start of a row, with {@code ' '} for empty
+	 * cells.
+	 * @param row The row.
+	 * @param length The number of characters.
+	 * @return The characters.
+	 */
+	private String rowText(int row, int length) {
+		StringBuilder buf = new StringBuilder();
+		for (int column = 0; column < length; column++) {
+			TerminalCell cell = model.getCell(column, row);
+			buf.append(cell == null ? ' ' : cell.getCharacter());
+		}
+		return buf.toString();
+	}
+
 	/**
 	 * Tests moving the cursor.
 	 */
@@ -151,7 +551,7 @@ public class TestVt100TerminalModel {
 	 */
 	@Test
 	public void testSgr() {
-		model.print("\u009B2;33;41mX");
+		model.print("\u009B1;33;41mX");
 
 		TerminalCell cell = model.getCell(0, 0);
 		assertNotNull(cell);
@@ -171,6 +571,176 @@ public class TestVt100TerminalModel {
 		assertEquals(model.getDefaultForegroundColor(), cell.getForegroundColor());
 	}
 
+	/**
+	 * Tests the 256 color, RGB and bright SGR colors.
+	 */
+	@Test
+	public void testExtendedColors() {
+		model.print("\u001B[38;5;196;48;2;1;2;3mX\u001B[38;5;16;48;5;232mY\u001B[91;104mZ");
+
+		TerminalCell cell = model.getCell(0, 0);
+		assertEquals(new Color(255, 0, 0), cell.getForegroundColor());
+		assertEquals(new Color(1, 2, 3), cell.getBackgroundColor());
+
+		cell = model.getCell(1, 0);
+		assertEquals(new Color(0, 0, 0), cell.getForegroundColor());
+		assertEquals(new Color(8, 8, 8), cell.getBackgroundColor());
+
+		cell = model.getCell(2, 0);
+		assertEquals(Palette.DEFAULT.getColor(9), cell.getForegroundColor());
+		assertEquals(Palette.DEFAULT.getColor(12), cell.getBackgroundColor());
+
+		/* RGB colors are shared rather than created for every cell */
+		model.print("\r\u001B[48;2;1;2;3mA\u001B[0mB\u001B[48;2;1;2;3mC");
+		assertSame(model.getCell(0, 0).getBackgroundColor(), model.getCell(2, 0).getBackgroundColor());
+
+		/* invalid colors are ignored along with the rest of the sequence */
+		model.print("\r\u001B[31;38;2;300;0;0;42mD\u001B[38;7;1;44mE");
+		cell = model.getCell(0, 0);
+		assertEquals(Palette.DEFAULT.getColor(1), cell.getForegroundColor());
+		assertEquals(Palette.DEFAULT.getColor(2), cell.getBackgroundColor());
+		assertEquals(Palette.DEFAULT.getColor(2), model.getCell(1, 0).getBackgroundColor());
+	}
+
+	/**
+	 * Tests the SGR attributes.
+	 */
+	@Test
+	public void testAttributes() {
+		model.print("\u001B[1;4;7mA\u001B[24;27mB\u001B[0;3;9;5;8mC\u001B[23;25;28;29mD\u001B[2mE\u001B[mF\u001B[1;2mG\u001B[22mH");
+
+		TerminalCell cell = model.getCell(0, 0);
+		assertEquals(TerminalCell.BOLD | TerminalCell.UNDERLINE | TerminalCell.INVERSE, cell.getAttributes());
+		assertEquals(Palette.DEFAULT.getColor(15), cell.getForegroundColor());
+
+		cell = model.getCell(1, 0);
+		assertEquals(TerminalCell.BOLD, cell.getAttributes());
+		assertTrue(cell.hasAttribute(TerminalCell.BOLD));
+		assertFalse(cell.hasAttribute(TerminalCell.ITALIC));
+
+		assertEquals(TerminalCell.ITALIC | TerminalCell.STRIKETHROUGH | TerminalCell.BLINK | TerminalCell.CONCEAL, model.getCell(2, 0).getAttributes());
+		assertEquals(0, model.getCell(3, 0).getAttributes());
+
+		/* 2 makes the text faint rather than brightening the colors */
+		cell = model.getCell(4, 0);
+		assertEquals(TerminalCell.FAINT, cell.getAttributes());
+		assertEquals(model.getDefaultForegroundColor(), cell.getForegroundColor());
+
+		cell = model.getCell(5, 0);
+		assertEquals(0, cell.getAttributes());
+		assertEquals(model.getDefaultForegroundColor(), cell.getForegroundColor());
+
+		/* 22 clears both bold and faint */
+		assertEquals(TerminalCell.BOLD | TerminalCell.FAINT, model.getCell(6, 0).getAttributes());
+		cell = model.getCell(7, 0);
+		assertEquals(0, cell.getAttributes());
+		assertEquals(model.getDefaultForegroundColor(), cell.getForegroundColor());
+
+		model.setCell(8, 0, new TerminalCell('I', Color.BLACK, Color.WHITE, TerminalCell.FAINT));
+		assertEquals(TerminalCell.FAINT, model.getCell(8, 0).getAttributes());
+	}
+
+	/**
+	 * Tests that cells with the same contents are shared rather than being
+	 * allocated for every character.
+	 */
+	@Test
+	public void testInterning() {
+		model.print("\u001B[31;1mab\u001B[0mab\u001B[31;1ma");
+
+		assertSame(model.getCell(0, 0), model.getCell(4, 0));
+		assertSame(model.getCell(2, 0), TerminalCell.of('a', model.getDefaultBackgroundColor(), model.getDefaultForegroundColor()));
+		assertNotSame(model.getCell(0, 0), model.getCell(2, 0));
+		assertNotSame(model.getCell(1, 0), model.getCell(3, 0));
+
+		TerminalCell cell = TerminalCell.of('x', Color.BLACK, Color.WHITE, TerminalCell.BOLD);
+		assertSame(cell, TerminalCell.of('x', Color.BLACK, Color.WHITE, TerminalCell.BOLD));
+		assertNotSame(cell, TerminalCell.of('x', Color.BLACK, Color.WHITE));
+
+		/* colors are compared by identity so cells keep the instances given */
+		Color black = new Color(0, 0, 0);
+		assertSame(black, TerminalCell.of('x', black, Color.WHITE, TerminalCell.BOLD).getBackgroundColor());
+	}
+
+	/**
+	 * Tests that changing the palette changes the colors of cells which have
+	 * already been printed.
+	 */
+	@Test
+	public void testPalette() {
+		Vt100TerminalModel vt100Model = (Vt100TerminalModel) model;
+		model.print("\u001B[35mA\u001B[1mB\u001B[37mC\u001B[0;38;2;1;2;3mD\u001B[0mE");
+
+		assertEquals(new Color(128, 0, 128), model.getCell(0, 0).getForegroundColor());
+		assertEquals(new Color(255, 0, 255), model.getCell(1, 0).getForegroundColor());
+		assertEquals(new Color(255, 255, 255), model.getCell(2, 0).getForegroundColor());
+		model.collectDamage();
+
+		Color[] colors = new Color[Palette.ANSI_SIZE];
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = new Color(i, i, i);
+		}
+		Palette palette = new Palette(colors);
+		vt100Model.setPalette(palette);
+		assertSame(palette, vt100Model.getPalette());
+		assertFalse(model.collectDamage().isEmpty());
+
+		assertEquals(new Color(5, 5, 5), model.getCell(0, 0).getForegroundColor());
+		assertEquals(new Color(13, 13, 13), model.getCell(1, 0).getForegroundColor());
+		assertEquals(new Color(15, 15, 15), model.getCell(2, 0).getForegroundColor());
+		assertEquals(new Color(1, 2, 3), model.getCell(3, 0).getForegroundColor());
+		assertEquals(new Color(7, 7, 7), model.getCell(4, 0).getForegroundColor());
+		assertEquals(new Color(0, 0, 0), model.getCell(4, 0).getBackgroundColor());
+		assertEquals(new Color(7, 7, 7), model.getDefaultForegroundColor());
+		assertEquals(Palette.DEFAULT.getColor(100), palette.getColor(100));
+
+		vt100Model.setPalette(palette.withColor(7, Color.ORANGE));
+		assertEquals(Color.ORANGE, model.getCell(4, 0).getForegroundColor());
+		assertEquals(new Color(5, 5, 5), model.getCell(0, 0).getForegroundColor());
+	}
+
+	/**
+	 * Tests that changing the palette keeps cells on the right slot when two
+	 * slots of the old palette were given the same color.
+	 */
+	@Test
+	public void testPaletteWithSharedColors() {
+		Vt100TerminalModel vt100Model = (Vt100TerminalModel) model;
+		vt100Model.setPalette(Palette.DEFAULT.withColor(8, Palette.DEFAULT.getColor(0)));
+		model.print("\u001B[30mA\u001B[90mB");
+
+		vt100Model.setPalette(Palette.DEFAULT.withColor(0, Color.RED).withColor(8, Color.GREEN));
+		assertEquals(Color.RED, model.getCell(0, 0).getForegroundColor());
+		assertEquals(Color.GREEN, model.getCell(1, 0).getForegroundColor());
+	}
+
+	/**
+	 * Tests that a sequence which is split between two writes is not broken
+	 * up by output from another input context.
+	 */
+	@Test
+	public void testInputContexts() {
+		Vt100TerminalModel vt100Model = (Vt100TerminalModel) model;
+		InputContext context = vt100Model.createInputContext();
+		assertSame(model, context.getModel());
+
+		context.print("\u001B[4");
+		assertFalse(context.isAtSequenceBoundary());
+		assertTrue(vt100Model.isAtSequenceBoundary());
+
+		model.print("x");
+		context.print("1mA");
+		assertTrue(context.isAtSequenceBoundary());
+
+		TerminalCell cell = model.getCell(0, 0);
+		assertEquals('x', cell.getCharacter());
+		assertEquals(model.getDefaultBackgroundColor(), cell.getBackgroundColor());
+
+		cell = model.getCell(1, 0);
+		assertEquals('A', cell.getCharacter());
+		assertEquals(Palette.DEFAULT.getColor(1), cell.getBackgroundColor());
+	}
+
 	/**
 	 * Tests saving and restoring the cursor.
 	 */
@@ -201,6 +771,129 @@ public class TestVt100TerminalModel {
 		assertNull(model.getCell(2, 0));
 	}
 
+	/**
+	 * Tests that text printed to a model with no columns is dropped.
+	 */
+	@Test(timeout = 10000)
+	public void testPrintWithNoColumns() {
+		Vt100TerminalModel empty = new Vt100TerminalModel(0, 1, 1);
+		empty.print("x\r\ny");
+		empty.print(new byte[] { 'z' }, 0, 1);
+		assertEquals(0, empty.getCursorColumn());
+		assertEquals(1, empty.getCursorRow());
+	}
+
+	/**
+	 * Tests that changes are reported as damaged regions.
+	 */
+	@Test
+	public void testDamage() {
+		List<TerminalRegion> damage = model.collectDamage();
+		assertEquals(1, damage.size());
+		assertRegion(0, 0, 80, 25, damage.get(0));
+		assertTrue(model.collectDamage().isEmpty());
+
+		model.print("Hi");
+		damage = model.collectDamage();
+		assertEquals(1, damage.size());
+		assertRegion(0, 0, 3, 1, damage.get(0));
+
+		model.print("\r\n\r\nab\r\ncd");
+		damage = model.collectDamage();
+		assertEquals(3, damage.size());
+		assertRegion(2, 0, 1, 1, damage.get(0));
+		assertRegion(0, 2, 2, 1, damage.get(1));
+		assertRegion(0, 3, 3, 1, damage.get(2));
+
+		model.print("\r\nef\r\ngh");
+		damage = model.collectDamage();
+		assertEquals(3, damage.size());
+		assertRegion(2, 3, 1, 1, damage.get(0));
+		assertRegion(0, 4, 2, 1, damage.get(1));
+		assertRegion(0, 5, 3, 1, damage.get(2));
+
+		TerminalCell cell = new TerminalCell('x', Color.BLACK, Color.WHITE);
+		model.setCell(5, 10, cell);
+		model.setCell(5, 11, cell);
+		damage = model.collectDamage();
+		assertEquals(1, damage.size());
+		assertRegion(5, 10, 1, 2, damage.get(0));
+
+		model.print("\u009B2K");
+		damage = model.collectDamage();
+		assertEquals(1, damage.size());
+		assertRegion(0, 5, 80, 1, damage.get(0));
+
+		model.setCursorRow(24);
+		for (int i = 0; i < 81; i++) {
+			model.print("x");
+		}
+		damage = model.collectDamage();
+		assertEquals(4, damage.size());
+		assertRegion(0, 0, 80, 25, damage.get(0));
+		assertEquals(1, damage.get(0).getScroll());
+		/* the cursor moved from row 5, which has scrolled to row 4 */
+		assertRegion(2, 4, 1, 2, damage.get(1));
+		assertRegion(2, 23, 78, 1, damage.get(2));
+		assertRegion(0, 24, 80, 1, damage.get(3));
+	}
+
+	/**
+	 * Tests that snapshots taken while another thread is printing never
+	 * contain part of a call to {@link TerminalModel#print(String)}.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	@Test
+	public void testConcurrentSnapshot() throws InterruptedException {
+		final String[] lines = new String[2];
+		for (int i = 0; i < lines.length; i++) {
+			StringBuilder line = new StringBuilder("\r");
+			for (int column = 0; column < model.getColumns(); column++) {
+				line.append((char) ('A' + i));
+			}
+			lines[i] = line.toString();
+		}
+
+		final TerminalModel model = this.model;
+		Thread printer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 20000; i++) {
+					model.print(lines[i % lines.length]);
+				}
+			}
+		};
+		printer.start();
+
+		TerminalSnapshot snapshot = new TerminalSnapshot();
+		while (printer.isAlive()) {
+			model.snapshot(0, 1, snapshot);
+			TerminalCell first = snapshot.getCell(0, 0);
+			if (first == null) {
+				continue;
+			}
+			for (int column = 1; column < model.getColumns(); column++) {
+				assertEquals(first.getCharacter(), snapshot.getCell(column, 0).getCharacter());
+			}
+		}
+		printer.join();
+	}
+
+	/**
+	 * Asserts that a region has the specified position and size.
+	 * @param column The expected first column.
+	 * @param row The expected first row.
+	 * @param columns The expected number of columns.
+	 * @param rows The expected number of rows.
+	 * @param region The region.
+	 */
+	private static void assertRegion(int column, int row, int columns, int rows, TerminalRegion region) {
+		assertEquals(column, region.getColumn());
+		assertEquals(row, region.getRow());
+		assertEquals(columns, region.getColumns());
+		assertEquals(rows, region.getRows());
+	}
+
 	/**
 	 * Tests that the bell is sounded.
 	 */